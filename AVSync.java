@@ -0,0 +1,128 @@
+/*
+ * Decides when each video frame goes on screen, against a MediaClock (the
+ * sound line when there is one). A frame is shown once the clock reaches its
+ * timestamp. One that is already more than the window behind is dropped if a
+ * newer frame is waiting, and shown late otherwise; one that is more than the
+ * window ahead keeps the frame before it on screen, repeating it.
+ *
+ * The counters are written by the presenter thread only and can be read live
+ * from any other.
+ */
+public class AVSync {
+
+	//Returned by decide for a frame that should be dropped.
+	static final long DROP = -1;
+
+	//How far a frame may be off the clock, set with -Dsync.windowMillis.
+	static final long DEFAULT_WINDOW_MILLIS = 40;
+
+	private final MediaClock clock;
+	private final long windowMicros;
+
+	private volatile long shown = 0;
+	private volatile long dropped = 0;
+	private volatile long late = 0;
+	private volatile long repeated = 0;
+	private volatile long lastDrift = 0;		//clock minus timestamp of the last frame shown, in microseconds
+	private volatile long maxDrift = 0;			//largest absolute drift
+	private volatile long totalDrift = 0;		//sum of absolute drifts
+	private long repeatedTimestamp = MediaClock.STOPPED;
+
+	public AVSync(MediaClock clock, long windowMillis) {
+		this.clock = clock;
+		this.windowMicros = windowMillis * 1000;
+	}
+
+	//Sync window from the sync.windowMillis property.
+	public static long windowFromProperties() {
+		return Long.getLong("sync.windowMillis", DEFAULT_WINDOW_MILLIS);
+	}
+
+	public MediaClock getClock() {
+		return clock;
+	}
+
+	/*
+	 * Returns how many microseconds to wait before showing the frame with the
+	 * given timestamp, 0 to show it now or DROP. The first frame after a reset
+	 * starts the clock and is shown straight away.
+	 */
+	public long decide(long timestamp, boolean newerReady) {
+		long now = clock.time();
+		if (now == MediaClock.STOPPED) {
+			clock.start(timestamp);
+			return 0;
+		}
+		long ahead = timestamp - now;
+		if (ahead > 0) {
+			if (ahead > windowMicros && timestamp != repeatedTimestamp) {
+				repeatedTimestamp = timestamp;
+				repeated++;
+			}
+			return ahead;
+		}
+		if (-ahead > windowMicros) {
+			if (newerReady) {
+				dropped++;
+				return DROP;
+			}
+			late++;
+		}
+		return 0;
+	}
+
+	//Records that the frame with the given timestamp went on screen.
+	public void shown(long timestamp) {
+		long now = clock.time();
+		long drift = now == MediaClock.STOPPED ? 0 : now - timestamp;
+		lastDrift = drift;
+		maxDrift = Math.max(maxDrift, Math.abs(drift));
+		totalDrift += Math.abs(drift);
+		shown++;
+	}
+
+	//Starts over for a new range of frames. The counters keep going.
+	public void reset() {
+		clock.reset();
+		repeatedTimestamp = MediaClock.STOPPED;
+	}
+
+	public void setPaused(boolean paused) {
+		clock.setPaused(paused);
+	}
+
+	public long getShown() {
+		return shown;
+	}
+
+	public long getDropped() {
+		return dropped;
+	}
+
+	public long getLate() {
+		return late;
+	}
+
+	public long getRepeated() {
+		return repeated;
+	}
+
+	//Drift of the last frame shown, in milliseconds. Positive when the picture is behind.
+	public double getDriftMillis() {
+		return lastDrift / 1000.0;
+	}
+
+	public double getMaxDriftMillis() {
+		return maxDrift / 1000.0;
+	}
+
+	public double getMeanDriftMillis() {
+		return shown == 0 ? 0 : totalDrift / 1000.0 / shown;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("shown %d, dropped %d, late %d, repeated %d, drift %.1f ms (mean %.1f, max %.1f)",
+				shown, dropped, late, repeated, getDriftMillis(), getMeanDriftMillis(), getMaxDriftMillis());
+	}
+}
@@ -0,0 +1,68 @@
+import java.util.Arrays;
+
+/*
+ * Local tb and ts for every frame, from the mean and standard deviation of
+ * the distances in a window centred on it instead of the whole video:
+ *
+ *   tb[i] = mean + std*cutStd,  ts[i] = mean*transitionMean
+ *
+ * over distance[i - window/2 .. i + window/2], cut short at the ends and
+ * leaving distance[i] itself out, so a cut does not raise its own threshold.
+ * A studio segment, a replay or a crowd shot then gets thresholds that suit
+ * it rather than ones set by the rest of the match.
+ *
+ * The window slides one distance at a time through a RollingStats, so the
+ * thresholds of the whole video cost the same however long the window is.
+ * Where fewer than three distances are left in the window the global
+ * thresholds are used.
+ */
+public class AdaptiveThresholds {
+
+	public final double[] tb;
+	public final double[] ts;
+
+	/*
+	 * Takes the distances as ProcessFrames.findDistance makes them: distance[0]
+	 * is not used and the last one is 0. The thresholds of those two are the
+	 * ones next to them.
+	 */
+	AdaptiveThresholds(double[] distance, int window, AnalysisSession.Parameters parameters,
+			double globalTb, double globalTs) {
+		int n = distance.length;
+		tb = new double[n];
+		ts = new double[n];
+		int last = n - 2;		//last real distance
+		if (last < 1) {
+			Arrays.fill(tb, globalTb);
+			Arrays.fill(ts, globalTs);
+			return;
+		}
+		int half = Math.max(1, window / 2);
+		RollingStats stats = new RollingStats(2 * half + 1);
+		for(int j = 1; j <= Math.min(last, 1 + half); j++) {
+			stats.add(distance[j]);
+		}
+		for(int i = 1; i <= last; i++) {
+			if (stats.count() >= 4) {
+				double mean = stats.meanWithout(distance[i]);
+				tb[i] = mean + stats.stdWithout(distance[i])*parameters.cutStd;
+				ts[i] = mean*parameters.transitionMean;
+			}
+			else {
+				tb[i] = globalTb;
+				ts[i] = globalTs;
+			}
+			//Slide to i + 1: the frame half + 1 ahead comes in, the one half behind goes.
+			if (i + half + 1 <= last) {
+				stats.add(distance[i + half + 1]);
+			}
+			else if (i - half >= 1) {
+				stats.removeOldest();
+			}
+		}
+		tb[0] = tb[1];
+		ts[0] = ts[1];
+		tb[n - 1] = tb[last];
+		ts[n - 1] = ts[last];
+	}
+}
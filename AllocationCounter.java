@@ -0,0 +1,35 @@
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/*
+ * Heap bytes allocated by one thread, read from the JVM's ThreadMXBean, for
+ * measuring how much garbage a decode loop makes per frame. Reads -1 on JVMs
+ * that don't count allocations.
+ */
+public class AllocationCounter {
+
+	private final long threadId;
+	private final long start;
+
+	//Starts counting for the current thread.
+	public AllocationCounter() {
+		threadId = Thread.currentThread().getId();
+		start = allocatedBytes(threadId);
+	}
+
+	//Bytes allocated by the thread since the counter was made.
+	public long getBytes() {
+		long now = allocatedBytes(threadId);
+		return now < 0 || start < 0 ? -1 : now - start;
+	}
+
+	private static long allocatedBytes(long threadId) {
+		ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (!(bean instanceof com.sun.management.ThreadMXBean))
+			return -1;
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+		if (!threads.isThreadAllocatedMemorySupported() || !threads.isThreadAllocatedMemoryEnabled())
+			return -1;
+		return threads.getThreadAllocatedBytes(threadId);
+	}
+}
@@ -0,0 +1,231 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/*
+ * On-disk cache of finished analyses, so a video that was already segmented
+ * does not go through ProcessFrames and shot capture again. Entries are keyed
+ * by a fingerprint of the video (size, modification time and a hash of a few
+ * sampled blocks) and of its _frames.bin, together with the detection
+ * parameters. Each one holds the _frames.bin features and the _shots.bin
+ * boundaries and images.
+ *
+ * The cache lives in ~/.shotcache unless the shotcache.dir property says
+ * otherwise, and is kept under shotcache.maxBytes (512 MB by default) by
+ * dropping the least recently used entries.
+ *
+ * Entries are copied into a temporary key.NNNN directory first and moved
+ * into place. Moving, dropping and evicting entries happen under a lock, on
+ * the class against other threads (the batch segmenter stores from a pool)
+ * and on a lock file in the cache against other processes.
+ *
+ * Usage: java AnalysisCache list | clear | invalidate <video>
+ */
+public class AnalysisCache {
+
+	static final String FEATURES = "frames.bin";
+	static final String SHOTS = "shots.bin";
+	static final String LOCK_FILE = "lock";
+
+	private static final Object LOCK = new Object();
+
+	//Blocks hashed from the video for the fingerprint.
+	private static final int SAMPLES = 16;
+	private static final int SAMPLE_BYTES = 64 * 1024;
+
+	private final File root;
+	private final long maxBytes;
+
+	AnalysisCache(File root, long maxBytes) {
+		this.root = root;
+		this.maxBytes = maxBytes;
+	}
+
+	public static AnalysisCache getDefault() {
+		String dir = System.getProperty("shotcache.dir",
+				new File(System.getProperty("user.home"), ".shotcache").getPath());
+		long maxBytes = Long.getLong("shotcache.maxBytes", 512L * 1024 * 1024);
+		return new AnalysisCache(new File(dir), maxBytes);
+	}
+
+	//Everything that changes the result of an analysis besides the video itself.
+	static String parameters() {
+		return AnalysisSession.Parameters.fromProperties()
+				+ ",bins=" + IntensityHistogram.BINS
+				+ ",features=" + FeatureFile.VERSION
+				+ ",descriptor=" + System.getProperty("shots.descriptor", "")
+				+ ",metric=" + System.getProperty("shots.metric", "l1")
+				+ ",window=" + Integer.getInteger("shots.window", 0)
+				+ ",shots=" + ShotStore.VERSION;
+	}
+
+	/*
+	 * Key of the cache entry for a video: a hash of its size, modification
+	 * time, sampled contents and the parameters.
+	 */
+	public String key(File video) throws IOException {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		}
+		catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+		long size = video.length();
+		digest.update((size + ":" + video.lastModified() + ":" + parameters()).getBytes(StandardCharsets.UTF_8));
+		//Features extracted again (say over another range of frames) make a new entry.
+		File features = new File(video.getPath() + FeatureFile.EXTENSION);
+		if (features.isFile()) {
+			digest.update((":" + features.length() + ":" + features.lastModified()).getBytes(StandardCharsets.UTF_8));
+		}
+
+		byte[] block = new byte[SAMPLE_BYTES];
+		try (RandomAccessFile in = new RandomAccessFile(video, "r")) {
+			long step = Math.max(SAMPLE_BYTES, size / SAMPLES);
+			for(long offset = 0; offset < size; offset += step) {
+				in.seek(offset);
+				int read = in.read(block);
+				if (read > 0) {
+					digest.update(block, 0, read);
+				}
+			}
+		}
+
+		StringBuilder hex = new StringBuilder();
+		byte[] hash = digest.digest();
+		for(int i = 0; i < 16; i++) {
+			hex.append(String.format("%02x", hash[i]));
+		}
+		return hex.toString();
+	}
+
+	/*
+	 * Returns the entry directory for the key, or null on a miss. A hit counts
+	 * as a use for the LRU order.
+	 */
+	public File lookup(String key) {
+		File entry = new File(root, key);
+		if (!new File(entry, FEATURES).isFile() || !new File(entry, SHOTS).isFile())
+			return null;
+		entry.setLastModified(System.currentTimeMillis());
+		return entry;
+	}
+
+	/*
+	 * Copies the analysis files into the entry for the key, then evicts old
+	 * entries if the cache has grown past its cap.
+	 */
+	public void store(String key, File features, File shots) throws IOException {
+		root.mkdirs();
+		File temp = Files.createTempDirectory(root.toPath(), key + ".").toFile();
+		Files.copy(features.toPath(), new File(temp, FEATURES).toPath());
+		Files.copy(shots.toPath(), new File(temp, SHOTS).toPath());
+
+		File entry = new File(root, key);
+		try {
+			locked(() -> {
+				delete(entry);
+				Files.move(temp.toPath(), entry.toPath(), StandardCopyOption.ATOMIC_MOVE);
+				entry.setLastModified(System.currentTimeMillis());
+				evict();
+			});
+		}
+		finally {
+			//Only left over when the move failed.
+			delete(temp);
+		}
+	}
+
+	//Drops the entry of a video.
+	public void invalidate(File video) throws IOException {
+		String key = key(video);
+		locked(() -> delete(new File(root, key)));
+	}
+
+	//Drops every entry.
+	public void clear() throws IOException {
+		locked(() -> {
+			for(File entry: entries()) {
+				delete(entry);
+			}
+		});
+	}
+
+	private interface Change {
+		void run() throws IOException;
+	}
+
+	//Makes the change holding the lock of this JVM and the lock file of the cache.
+	private void locked(Change change) throws IOException {
+		synchronized(LOCK) {
+			root.mkdirs();
+			try (FileChannel channel = FileChannel.open(new File(root, LOCK_FILE).toPath(),
+					StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+				//Released when the channel is closed.
+				channel.lock();
+				change.run();
+			}
+		}
+	}
+
+	//Removes least recently used entries until the cache fits in maxBytes. Called under the lock.
+	void evict() {
+		File[] entries = entries();
+		Arrays.sort(entries, Comparator.comparingLong(File::lastModified));
+		long total = 0;
+		for(File entry: entries) {
+			total += size(entry);
+		}
+		for(int i = 0; i < entries.length && total > maxBytes; i++) {
+			total -= size(entries[i]);
+			delete(entries[i]);
+		}
+	}
+
+	//Entry directories, named by their key; a name with a dot is a store still copying.
+	private File[] entries() {
+		File[] entries = root.listFiles(file -> file.isDirectory() && file.getName().indexOf('.') < 0);
+		return entries == null ? new File[0] : entries;
+	}
+
+	private static long size(File entry) {
+		return new File(entry, FEATURES).length() + new File(entry, SHOTS).length();
+	}
+
+	private static void delete(File entry) {
+		File[] files = entry.listFiles();
+		if (files != null) {
+			for(File file: files) {
+				file.delete();
+			}
+		}
+		entry.delete();
+	}
+
+	public static void main(String[] args) throws IOException {
+		AnalysisCache cache = getDefault();
+		if (args.length == 1 && args[0].equals("list")) {
+			for(File entry: cache.entries()) {
+				System.out.println(entry.getName() + "\t" + size(entry) + " bytes");
+			}
+		}
+		else if (args.length == 1 && args[0].equals("clear")) {
+			cache.clear();
+		}
+		else if (args.length == 2 && args[0].equals("invalidate")) {
+			cache.invalidate(new File(args[1]));
+		}
+		else {
+			System.out.println("usage: java AnalysisCache list | clear | invalidate <video>");
+		}
+	}
+}
@@ -0,0 +1,320 @@
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+/*
+ * The frame distances of one video kept in memory, so the twin-comparison can
+ * be run again with other thresholds without reading the features or working
+ * out the distances again. Next to the distances it keeps them sorted, with
+ * the frame each came from, and the running sum of their whole parts:
+ *
+ *  - cuts are the frames at or over tb, read off the end of the sorted list;
+ *  - transitions only change state on frames at or over ts, so only those are
+ *    visited (through a bit set, in frame order), and the frames under ts
+ *    between them are counted at once instead of one by one;
+ *  - the sum a transition has to reach is the difference of two running sums.
+ *
+ * Detection then costs about the number of frames over ts, not the length of
+ * the video, and gives the same boundaries as ProcessFrames with global
+ * thresholds. The local ones of shots.window are not tried here: every frame
+ * has its own tb and ts, so the sorted list does not help.
+ *
+ * Usage: java AnalysisSession [-cut a,b,...] [-transition a,b,...] [-tor a,b,...] <video | _frames.bin>
+ * prints the boundaries found for every combination of the given multipliers.
+ */
+public class AnalysisSession {
+
+	/*
+	 * The thresholds of the twin-comparison: tb = mean + std*cutStd,
+	 * ts = mean*transitionMean, and tor frames under ts end a transition.
+	 */
+	public static final class Parameters {
+
+		public static final Parameters DEFAULT = new Parameters(ProcessFrames.CUT_STD_MULTIPLIER,
+				ProcessFrames.TRANSITION_MEAN_MULTIPLIER, ProcessFrames.DEFAULT_TOR);
+
+		public final double cutStd;
+		public final double transitionMean;
+		public final int tor;
+
+		public Parameters(double cutStd, double transitionMean, int tor) {
+			if (tor < 1)
+				throw new IllegalArgumentException("tor must be at least 1: " + tor);
+			this.cutStd = cutStd;
+			this.transitionMean = transitionMean;
+			this.tor = tor;
+		}
+
+		//The defaults, overridden by the shots.cutStd, shots.transitionMean and shots.tor properties.
+		public static Parameters fromProperties() {
+			String cutStd = System.getProperty("shots.cutStd");
+			String transitionMean = System.getProperty("shots.transitionMean");
+			return new Parameters(cutStd != null ? Double.parseDouble(cutStd) : DEFAULT.cutStd,
+					transitionMean != null ? Double.parseDouble(transitionMean) : DEFAULT.transitionMean,
+					Integer.getInteger("shots.tor", DEFAULT.tor));
+		}
+
+		@Override
+		public String toString() {
+			return "cutStd=" + cutStd + ",transitionMean=" + transitionMean + ",tor=" + tor;
+		}
+	}
+
+	//What one run of the twin-comparison found, as frame numbers in ascending order.
+	public static final class Boundaries {
+		public final Parameters parameters;
+		public final int[] cuts;
+		public final int[] transitions;
+
+		Boundaries(Parameters parameters, int[] cuts, int[] transitions) {
+			this.parameters = parameters;
+			this.cuts = cuts;
+			this.transitions = transitions;
+		}
+
+		//Cuts and transitions together, as ProcessFrames.getFirstFrames gives them.
+		public int[] firstFrames() {
+			return ProcessFrames.merge(cuts, transitions);
+		}
+	}
+
+	private final double[] distance;
+	private final int startFrame;
+	private final double mean;
+	private final double std;
+
+	private final int[] order;			//frames 1.. by ascending distance
+	private final double[] sorted;		//their distances
+	private final long[] wholeSums;		//wholeSums[k] = sum of (int) distance[j] for j < k
+	private final BitSet marks = new BitSet();
+
+	/*
+	 * Takes the distances as ProcessFrames.findDistance makes them: distance[i]
+	 * is from row i - 1 to row i, distance[0] is not used and the last one is
+	 * 0. The array is not copied.
+	 */
+	AnalysisSession(double[] distance, int startFrame, double mean, double std) {
+		this.distance = distance;
+		this.startFrame = startFrame;
+		this.mean = mean;
+		this.std = std;
+
+		int n = distance.length;
+		wholeSums = new long[n + 1];
+		for(int j = 0; j < n; j++) {
+			wholeSums[j + 1] = wholeSums[j] + (long) distance[j];
+		}
+		order = new int[Math.max(0, n - 1)];
+		for(int k = 0; k < order.length; k++) {
+			order[k] = k + 1;
+		}
+		sortByDistance(order, new int[order.length], 0, order.length);
+		sorted = new double[order.length];
+		for(int k = 0; k < order.length; k++) {
+			sorted[k] = distance[order[k]];
+		}
+	}
+
+	//Reads the features of a video, or a _frames.bin file, and works out the distances.
+	public static AnalysisSession open(String path) {
+		ProcessFrames frames = path.endsWith(FeatureFile.EXTENSION) ? new ProcessFrames(new File(path))
+				: new ProcessFrames(path);
+		return frames.session();
+	}
+
+	public double getMean() {
+		return mean;
+	}
+
+	public double getStd() {
+		return std;
+	}
+
+	//Number of distances, one less than the number of frames.
+	public int size() {
+		return order.length;
+	}
+
+	//Runs the twin-comparison with the given thresholds.
+	public synchronized Boundaries detect(Parameters parameters) {
+		double tb = mean + std*parameters.cutStd;
+		double ts = mean*parameters.transitionMean;
+		return new Boundaries(parameters, cuts(tb), transitions(tb, ts, parameters.tor));
+	}
+
+	/*
+	 * Runs the twin-comparison for every combination of the given values,
+	 * cut multipliers outermost and tor innermost. The cuts only depend on the
+	 * cut multiplier, so they are found once for each.
+	 */
+	public synchronized List<Boundaries> sweep(double[] cutStds, double[] transitionMeans, int[] tors) {
+		List<Boundaries> results = new ArrayList<Boundaries>(cutStds.length * transitionMeans.length * tors.length);
+		for(double cutStd: cutStds) {
+			double tb = mean + std*cutStd;
+			int[] cuts = cuts(tb);
+			for(double transitionMean: transitionMeans) {
+				for(int tor: tors) {
+					Parameters parameters = new Parameters(cutStd, transitionMean, tor);
+					results.add(new Boundaries(parameters, cuts, transitions(tb, mean*transitionMean, tor)));
+				}
+			}
+		}
+		return results;
+	}
+
+	//Frames whose distance is at least tb, like ProcessFrames.findCuts.
+	private int[] cuts(double tb) {
+		markAtLeast(tb);
+		int[] cuts = new int[marks.cardinality()];
+		int c = 0;
+		for(int i = marks.nextSetBit(0); i >= 0; i = marks.nextSetBit(i + 1)) {
+			//Have to add 1 because Ce is frame i + 1
+			cuts[c++] = i + 1 + startFrame;
+		}
+		return cuts;
+	}
+
+	/*
+	 * Same state machine as ProcessFrames.findTransitions, stepping from one
+	 * frame at or over ts to the next. Every frame in between is under ts, so
+	 * a run of them either ends the transition tor - under frames in or just
+	 * adds to under.
+	 */
+	private int[] transitions(double tb, double ts, int tor) {
+		markAtLeast(ts);
+		int[] results = new int[16];
+		int count = 0;
+		int fscan = 0;
+		int under = 0;
+		int last = 0;
+		int end = distance.length;
+		for(int i = marks.nextSetBit(1); ; i = marks.nextSetBit(i + 1)) {
+			int next = i < 0 ? end : i;
+			int gap = next - last - 1;
+			if (fscan != 0 && gap > 0) {
+				if (under + gap >= tor) {
+					int fecan = last + tor - under;
+					//Goes from fscan - 1 to pick up frame 3277.
+					if (wholeSums[fecan] - wholeSums[fscan - 1] >= tb) {
+						if (count == results.length) {
+							results = Arrays.copyOf(results, count * 2);
+						}
+						results[count++] = fscan + 2 + startFrame;
+					}
+					fscan = 0;
+				}
+				else {
+					under += gap;
+				}
+			}
+			if (i < 0)
+				break;
+			if (distance[i] < tb) {
+				if (fscan == 0) {
+					fscan = i;
+				}
+				under = 0;
+			}
+			else if (distance[i] > tb) {
+				fscan = 0;
+			}
+			last = i;
+		}
+		return Arrays.copyOf(results, count);
+	}
+
+	//Marks the frames whose distance is at least the threshold.
+	private void markAtLeast(double threshold) {
+		int low = 0;
+		int high = sorted.length;
+		while(low < high) {
+			int middle = (low + high) >>> 1;
+			if (sorted[middle] < threshold) {
+				low = middle + 1;
+			}
+			else {
+				high = middle;
+			}
+		}
+		marks.clear();
+		for(int k = low; k < sorted.length; k++) {
+			marks.set(order[k]);
+		}
+	}
+
+	//Merge sort of frames by distance, stable so equal distances stay in frame order.
+	private void sortByDistance(int[] frames, int[] scratch, int from, int to) {
+		if (to - from < 2)
+			return;
+		int middle = (from + to) >>> 1;
+		sortByDistance(frames, scratch, from, middle);
+		sortByDistance(frames, scratch, middle, to);
+		if (distance[frames[middle - 1]] <= distance[frames[middle]])
+			return;
+		System.arraycopy(frames, from, scratch, from, to - from);
+		int a = from;
+		int b = middle;
+		for(int k = from; k < to; k++) {
+			if (b == to || (a < middle && distance[scratch[a]] <= distance[scratch[b]])) {
+				frames[k] = scratch[a++];
+			}
+			else {
+				frames[k] = scratch[b++];
+			}
+		}
+	}
+
+	public static void main(String[] args) {
+		double[] cutStds = { Parameters.DEFAULT.cutStd };
+		double[] transitionMeans = { Parameters.DEFAULT.transitionMean };
+		int[] tors = { Parameters.DEFAULT.tor };
+		String path = null;
+		for(int i = 0; i < args.length; i++) {
+			if (args[i].equals("-cut") && i + 1 < args.length) {
+				cutStds = doubles(args[++i]);
+			}
+			else if (args[i].equals("-transition") && i + 1 < args.length) {
+				transitionMeans = doubles(args[++i]);
+			}
+			else if (args[i].equals("-tor") && i + 1 < args.length) {
+				double[] values = doubles(args[++i]);
+				tors = new int[values.length];
+				for(int k = 0; k < values.length; k++) {
+					tors[k] = (int) values[k];
+				}
+			}
+			else {
+				path = args[i];
+			}
+		}
+		if (path == null) {
+			System.out.println("usage: java AnalysisSession [-cut a,b,...] [-transition a,b,...] [-tor a,b,...] <video | _frames.bin>");
+			return;
+		}
+
+		long started = System.nanoTime();
+		AnalysisSession session = open(path);
+		long opened = System.nanoTime();
+		List<Boundaries> results = session.sweep(cutStds, transitionMeans, tors);
+		long swept = System.nanoTime();
+		System.out.printf("%d distances, mean %.1f, std %.1f, read in %.1f ms%n", session.size(), session.mean,
+				session.std, (opened - started) / 1e6);
+		for(Boundaries boundaries: results) {
+			System.out.println(boundaries.parameters + ": " + boundaries.cuts.length + " cuts, "
+					+ boundaries.transitions.length + " transitions");
+		}
+		System.out.printf("%d runs in %.2f ms, %.1f us each%n", results.size(), (swept - opened) / 1e6,
+				(swept - opened) / 1e3 / results.size());
+	}
+
+	private static double[] doubles(String list) {
+		String[] parts = list.split(",");
+		double[] values = new double[parts.length];
+		for(int k = 0; k < parts.length; k++) {
+			values[k] = Double.parseDouble(parts[k].trim());
+		}
+		return values;
+	}
+}
@@ -0,0 +1,60 @@
+import javax.sound.sampled.SourceDataLine;
+
+/*
+ * Stream time taken from how many frames the sound line has actually played
+ * (SourceDataLine.getLongFramePosition), so the picture follows the sound
+ * instead of the other way round. Until the first audio chunk of a range is
+ * written, and for ranges without sound, it runs on a SystemClock started by
+ * the first video frame. A stopped line stops the position, so pausing needs
+ * nothing more.
+ */
+public class AudioClock implements MediaClock {
+
+	private final SourceDataLine line;
+	private final float frameRate;
+	private final SystemClock fallback;
+	private long audioStart = STOPPED;	//timestamp of the first chunk played since the reset
+	private long basePosition;			//line position when that chunk was written
+
+	public AudioClock(SourceDataLine line) {
+		this(line, new SystemClock());
+	}
+
+	AudioClock(SourceDataLine line, SystemClock fallback) {
+		this.line = line;
+		this.frameRate = line.getFormat().getFrameRate();
+		this.fallback = fallback;
+	}
+
+	@Override
+	public synchronized long time() {
+		if (audioStart == STOPPED)
+			return fallback.time();
+		long played = line.getLongFramePosition() - basePosition;
+		return audioStart + (long) (played * 1000000L / frameRate);
+	}
+
+	@Override
+	public synchronized void start(long streamTime) {
+		fallback.start(streamTime);
+	}
+
+	@Override
+	public synchronized void audioStarted(long streamTime) {
+		if (audioStart != STOPPED)
+			return;
+		audioStart = streamTime;
+		basePosition = line.getLongFramePosition();
+	}
+
+	@Override
+	public synchronized void reset() {
+		audioStart = STOPPED;
+		fallback.reset();
+	}
+
+	@Override
+	public synchronized void setPaused(boolean paused) {
+		fallback.setPaused(paused);
+	}
+}
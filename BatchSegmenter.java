@@ -0,0 +1,194 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Headless batch version of ProcessVideo + VideoControl. Segments many videos
+ * in one JVM, several at a time, and for each one writes the _frames.bin
+ * features, the _shots.bin boundaries and images and the _index.bin frame
+ * index next to the video, and adds them to the AnalysisCache so the
+ * browsing GUI opens them instantly.
+ * Never opens a window or an audio line.
+ *
+ * Usage: java BatchSegmenter [-threads n] [ProcessVideo options] <inputs>
+ *
+ * Each input is a video, a directory (every video in it), or a text file
+ * listing one video per line. The ProcessVideo options (-start, -end,
+ * -legacy, -text, ...) apply to every video.
+ */
+public class BatchSegmenter {
+
+	static final List<String> VIDEO_EXTENSIONS = Arrays.asList(
+			".avi", ".mp4", ".mkv", ".mov", ".mpg", ".mpeg", ".m4v", ".ts", ".wmv", ".flv");
+
+	//Outcome of one video, for the report.
+	static class Result {
+		final String filename;
+		int frames;
+		int shots;
+		long nanos;
+		Throwable failure;
+
+		Result(String filename) {
+			this.filename = filename;
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		System.setProperty("java.awt.headless", "true");
+
+		int threads = Runtime.getRuntime().availableProcessors();
+		List<String> options = new ArrayList<String>();
+		List<String> inputs = new ArrayList<String>();
+		for(int i = 0; i < args.length; i++) {
+			if (args[i].equals("-threads") && i + 1 < args.length) {
+				threads = Integer.parseInt(args[++i]);
+			}
+			else if (args[i].startsWith("-")) {
+				//ProcessVideo options, with their value when they take one.
+				options.add(args[i]);
+				if (takesValue(args[i]) && i + 1 < args.length) {
+					options.add(args[++i]);
+				}
+			}
+			else {
+				inputs.add(args[i]);
+			}
+		}
+
+		List<String> videos = findVideos(inputs);
+		if (videos.isEmpty()) {
+			System.out.println("usage: java BatchSegmenter [-threads n] [ProcessVideo options] <video | directory | list file>...");
+			return;
+		}
+
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		List<Future<Result>> futures = new ArrayList<Future<Result>>();
+		long start = System.nanoTime();
+		for(String video: videos) {
+			futures.add(executor.submit(() -> segment(video, options)));
+		}
+		executor.shutdown();
+
+		List<Result> results = new ArrayList<Result>();
+		for(Future<Result> future: futures) {
+			results.add(future.get());
+		}
+		executor.awaitTermination(1, TimeUnit.MINUTES);
+		report(results, System.nanoTime() - start);
+	}
+
+	private static boolean takesValue(String option) {
+		return option.equals("-start") || option.equals("-end")
+				|| option.equals("-workers") || option.equals("-queue")
+				|| option.equals("-stride") || option.equals("-scale") || option.equals("-every")
+				|| option.equals("-descriptors");
+	}
+
+	//Expands directories and list files into video paths.
+	static List<String> findVideos(List<String> inputs) throws IOException {
+		List<String> videos = new ArrayList<String>();
+		for(String input: inputs) {
+			File file = new File(input);
+			if (file.isDirectory()) {
+				File[] files = file.listFiles();
+				Arrays.sort(files);
+				for(File child: files) {
+					if (child.isFile() && isVideo(child.getName())) {
+						videos.add(child.getPath());
+					}
+				}
+			}
+			else if (isVideo(file.getName())) {
+				videos.add(file.getPath());
+			}
+			else if (file.isFile()) {
+				for(String line: Files.readAllLines(file.toPath(), StandardCharsets.UTF_8)) {
+					if (!line.trim().isEmpty()) {
+						videos.add(line.trim());
+					}
+				}
+			}
+		}
+		return videos;
+	}
+
+	private static boolean isVideo(String name) {
+		String lower = name.toLowerCase(Locale.ROOT);
+		for(String extension: VIDEO_EXTENSIONS) {
+			if (lower.endsWith(extension))
+				return true;
+		}
+		return false;
+	}
+
+	/*
+	 * Extracts the features, finds the shots and captures their images for one
+	 * video. Failures are kept in the result instead of stopping the batch.
+	 */
+	static Result segment(String filename, List<String> options) {
+		Result result = new Result(filename);
+		long start = System.nanoTime();
+		try {
+			ProcessVideo pv = new ProcessVideo();
+			List<String> args = new ArrayList<String>(options);
+			args.add(filename);
+			pv.parseArgs(args.toArray(new String[0]));
+			pv.extract(filename);
+			pv.writeIntensity(filename);
+			result.frames = pv.getFrameCount();
+
+			ProcessFrames pf = new ProcessFrames(filename);
+			TreeSet<Integer> frames = new TreeSet<Integer>();
+			frames.add(pf.getStartFrame());
+			for(int frame: pf.getFirstFrames()) {
+				frames.add(frame);
+			}
+			ArrayList<VideoFrame> shots = ShotCapture.capture(new ArrayList<Integer>(frames), filename);
+			result.shots = shots.size();
+
+			File features = new File(filename + FeatureFile.EXTENSION);
+			File shotFile = new File(filename + ShotStore.EXTENSION);
+			ShotStore.write(shotFile, shots);
+			FrameIndex.forVideo(filename);
+			AnalysisCache cache = AnalysisCache.getDefault();
+			cache.store(cache.key(new File(filename)), features, shotFile);
+		}
+		catch (Throwable t) {
+			result.failure = t;
+		}
+		result.nanos = System.nanoTime() - start;
+		return result;
+	}
+
+	//Prints the throughput of every video and of the whole batch.
+	static void report(List<Result> results, long totalNanos) {
+		long frames = 0;
+		int failed = 0;
+		for(Result result: results) {
+			double seconds = result.nanos / 1e9;
+			if (result.failure != null) {
+				failed++;
+				System.out.printf("%s: FAILED after %.1f s: %s%n", result.filename, seconds, result.failure);
+			}
+			else {
+				frames += result.frames;
+				System.out.printf("%s: %d frames, %d shots in %.1f s (%.0f frames/s)%n",
+						result.filename, result.frames, result.shots, seconds, result.frames / seconds);
+			}
+		}
+		double seconds = totalNanos / 1e9;
+		System.out.printf("%d videos (%d failed), %d frames in %.1f s (%.0f frames/s)%n",
+				results.size(), failed, frames, seconds, frames / seconds);
+	}
+}
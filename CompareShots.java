@@ -0,0 +1,63 @@
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+ * Measures how close the shots found from one feature file come to the shots
+ * found from another, usually the fast analysis mode (-stride, -scale, -every)
+ * against the full one. A boundary counts as found when the other file has
+ * one within the tolerance, each boundary matching at most once.
+ *
+ * Usage: java CompareShots [-tolerance n] <reference _frames.bin> <candidate _frames.bin>
+ */
+public class CompareShots {
+
+	static final int DEFAULT_TOLERANCE = 2;
+
+	public static void main(String[] args) {
+		int tolerance = DEFAULT_TOLERANCE;
+		List<String> files = new ArrayList<String>();
+		for(int i = 0; i < args.length; i++) {
+			if (args[i].equals("-tolerance") && i + 1 < args.length) {
+				tolerance = Integer.parseInt(args[++i]);
+			}
+			else {
+				files.add(args[i]);
+			}
+		}
+		if (files.size() != 2) {
+			System.out.println("usage: java CompareShots [-tolerance n] <reference _frames.bin> <candidate _frames.bin>");
+			return;
+		}
+
+		int[] reference = new ProcessFrames(new File(files.get(0))).getFirstFrames();
+		int[] candidate = new ProcessFrames(new File(files.get(1))).getFirstFrames();
+		int matched = matches(reference, candidate, tolerance);
+
+		double precision = candidate.length == 0 ? 1 : (double) matched / candidate.length;
+		double recall = reference.length == 0 ? 1 : (double) matched / reference.length;
+		double f1 = precision + recall == 0 ? 0 : 2 * precision * recall / (precision + recall);
+		System.out.println("reference: " + reference.length + " boundaries, candidate: " + candidate.length
+				+ ", matched: " + matched + " (tolerance " + tolerance + " frames)");
+		System.out.printf("precision %.3f, recall %.3f, F1 %.3f%n", precision, recall, f1);
+	}
+
+	/*
+	 * Walks both sorted lists together and pairs every candidate with the
+	 * first unmatched reference boundary within the tolerance.
+	 */
+	static int matches(int[] reference, int[] candidate, int tolerance) {
+		int matched = 0;
+		int r = 0;
+		for(int frame: candidate) {
+			while(r < reference.length && reference[r] < frame - tolerance) {
+				r++;
+			}
+			if (r < reference.length && reference[r] <= frame + tolerance) {
+				matched++;
+				r++;
+			}
+		}
+		return matched;
+	}
+}
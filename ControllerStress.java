@@ -0,0 +1,132 @@
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ * Hammers a PlayerController headless with shot switches, seeks, plays and
+ * pauses from several threads at once, against a stand-in player whose ranges
+ * become ready and finish after random delays. Every command has to be
+ * carried out within one frame interval, and once the storm is over the
+ * player has to be left playing exactly the range the controller says.
+ *
+ * Usage: java ControllerStress [-commands n] [-threads n] [-frameMillis n] [-seed n]
+ */
+public class ControllerStress {
+
+	public static void main(String[] args) throws InterruptedException {
+		int commands = 10000;
+		int threads = 4;
+		long frameMillis = 40;
+		long seed = 1;
+		for(int i = 0; i + 1 < args.length; i += 2) {
+			String value = args[i + 1];
+			switch(args[i]) {
+			case "-commands": commands = Integer.parseInt(value); break;
+			case "-threads": threads = Integer.parseInt(value); break;
+			case "-frameMillis": frameMillis = Long.parseLong(value); break;
+			case "-seed": seed = Long.parseLong(value); break;
+			default:
+				System.out.println("unknown option " + args[i]);
+				return;
+			}
+		}
+		long frameNanos = TimeUnit.MILLISECONDS.toNanos(frameMillis);
+
+		ScheduledExecutorService decoder = Executors.newSingleThreadScheduledExecutor();
+		StandIn player = new StandIn(decoder, new Random(seed));
+		PlayerController controller = new PlayerController(player, (state, start, end) -> { });
+		player.controller = controller;
+		controller.start();
+
+		AtomicLong late = new AtomicLong();
+		Thread[] senders = new Thread[threads];
+		int perThread = commands / threads;
+		for(int t = 0; t < threads; t++) {
+			Random random = new Random(seed + t + 1);
+			senders[t] = new Thread(() -> {
+				for(int i = 0; i < perThread; i++) {
+					int pick = random.nextInt(10);
+					int shot = random.nextInt(100) * 100;
+					PlayerController.Command command;
+					if (pick < 6) {
+						command = controller.selectShot(shot, shot + 100);
+					}
+					else if (pick < 8) {
+						command = controller.toggle();
+					}
+					else if (pick < 9) {
+						command = controller.seek(shot);
+					}
+					else {
+						command = random.nextBoolean() ? controller.play() : controller.pause();
+					}
+					if (!command.await(frameNanos)) {
+						late.incrementAndGet();
+						command.await(Long.MAX_VALUE);
+					}
+				}
+			});
+			senders[t].start();
+		}
+		for(Thread sender: senders) {
+			sender.join();
+		}
+
+		//Settle on one shot and play it.
+		controller.selectShot(500, 600);
+		controller.play().await(Long.MAX_VALUE);
+		long due = System.nanoTime() + TimeUnit.SECONDS.toNanos(1);
+		while(controller.getState() == PlayerController.State.SEEKING && System.nanoTime() < due) {
+			Thread.sleep(1);
+		}
+		PlayerController.State state = controller.getState();
+		boolean settled = state == PlayerController.State.PLAYING && !player.paused
+				&& player.start == 500 && player.end == 600;
+		controller.pause().await(Long.MAX_VALUE);
+		settled &= player.paused && controller.getState() == PlayerController.State.PAUSED;
+		controller.stop().await(Long.MAX_VALUE);
+		decoder.shutdownNow();
+
+		System.out.println(controller);
+		System.out.println(player.plays.get() + " ranges started, " + late.get() + " commands not done within "
+				+ frameMillis + " ms");
+		System.out.println(settled ? "settled on the last shot" : "FAILED: ended " + state + " on "
+				+ player.start + ".." + player.end + (player.paused ? ", paused" : ", playing"));
+	}
+
+	//Starts ranges that are ready after up to 3 ms and sometimes finish soon after.
+	private static class StandIn implements PlayerController.Player {
+		final ScheduledExecutorService decoder;
+		final Random random;
+		final AtomicLong plays = new AtomicLong();
+		volatile PlayerController controller;
+		volatile boolean paused = true;
+		volatile int start;
+		volatile int end;
+
+		StandIn(ScheduledExecutorService decoder, Random random) {
+			this.decoder = decoder;
+			this.random = random;
+		}
+
+		@Override
+		public long play(int from, int to) {
+			long generation = plays.incrementAndGet();
+			start = from;
+			end = to;
+			decoder.schedule(() -> controller.rangeReady(generation), random.nextInt(3000), TimeUnit.MICROSECONDS);
+			if (random.nextInt(4) == 0) {
+				decoder.schedule(() -> controller.rangeFinished(generation), 3000 + random.nextInt(5000),
+						TimeUnit.MICROSECONDS);
+			}
+			return generation;
+		}
+
+		@Override
+		public void setPaused(boolean pause) {
+			paused = pause;
+		}
+	}
+}
@@ -0,0 +1,206 @@
+import java.awt.Graphics;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.WritableRaster;
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+ * The descriptors a feature row is made of, side by side in the order they
+ * were given, and the single pass over a frame's pixels that fills them all.
+ * The frame is walked one sampled scanline at a time: the intensity of every
+ * pixel in the line is worked out once, then each descriptor takes the line
+ * while it is still in the cache. The known descriptors are
+ *
+ *   intensity  the 26 column histogram ProcessFrames always used
+ *   hsv        quantised hue, saturation and value (HsvDescriptor)
+ *   grid       intensity histograms of a 4x4 grid of blocks (GridDescriptor)
+ *   ecr        edge pixels of a 4x4 grid of blocks, compared as an edge
+ *              change ratio (EdgeChangeDescriptor)
+ */
+public final class DescriptorSet {
+
+	public static final DescriptorSet INTENSITY = new DescriptorSet(new FrameDescriptor[] { new IntensityDescriptor() });
+
+	/*
+	 * One sampled scanline of a frame, as handed to the descriptors. Pixel x
+	 * of the line is at bgr[p + x*step]. Each thread gets its own.
+	 */
+	public static final class Scanline {
+		int y;						//number of the line among the sampled ones
+		int width;					//sampled size of the frame
+		int height;
+		byte[] bgr;
+		int p;
+		int step;
+		int[] intensity = new int[0];	//intensity (0-255) of every pixel of the line
+		int[] previous = new int[0];	//same for the line above, when y > 0
+
+		//Sets up the line for a frame of the given sampled size.
+		void start(int width, int height) {
+			this.width = width;
+			this.height = height;
+			if (intensity.length < width) {
+				intensity = new int[width];
+				previous = new int[width];
+			}
+		}
+
+		//Moves on to line y, whose first pixel is at bgr[p].
+		void next(int y, byte[] bgr, int p, int step) {
+			int[] swap = previous;
+			previous = intensity;
+			intensity = swap;
+			this.y = y;
+			this.bgr = bgr;
+			this.p = p;
+			this.step = step;
+			for(int x = 0; x < width; x++) {
+				intensity[x] = IntensityHistogram.intensity(bgr[p] & 0xff, bgr[p + 1] & 0xff, bgr[p + 2] & 0xff);
+				p += step;
+			}
+		}
+	}
+
+	private static final ThreadLocal<Scanline> LINES = ThreadLocal.withInitial(Scanline::new);
+
+	private final FrameDescriptor[] descriptors;
+	private final int[] offsets;
+	private final int columns;
+
+	DescriptorSet(FrameDescriptor[] descriptors) {
+		this.descriptors = descriptors.clone();
+		offsets = new int[descriptors.length];
+		int total = 0;
+		for(int k = 0; k < descriptors.length; k++) {
+			offsets[k] = total;
+			total += descriptors[k].columns();
+		}
+		columns = total;
+	}
+
+	/*
+	 * The descriptors named in a comma separated list, like "intensity,hsv".
+	 * Throws IllegalArgumentException for a name it does not know.
+	 */
+	public static DescriptorSet parse(String names) {
+		List<FrameDescriptor> list = new ArrayList<FrameDescriptor>();
+		for(String name: names.split(",")) {
+			list.add(forName(name.trim()));
+		}
+		if (list.size() == 1 && list.get(0) instanceof IntensityDescriptor)
+			return INTENSITY;
+		return new DescriptorSet(list.toArray(new FrameDescriptor[list.size()]));
+	}
+
+	public static FrameDescriptor forName(String name) {
+		switch(name) {
+		case IntensityDescriptor.NAME:
+			return new IntensityDescriptor();
+		case HsvDescriptor.NAME:
+			return new HsvDescriptor();
+		case GridDescriptor.NAME:
+			return new GridDescriptor();
+		case EdgeChangeDescriptor.NAME:
+			return new EdgeChangeDescriptor();
+		default:
+			throw new IllegalArgumentException("unknown descriptor: " + name);
+		}
+	}
+
+	//The descriptor with the given id, as written in a feature file header.
+	public static FrameDescriptor forId(int id) {
+		switch(id) {
+		case IntensityDescriptor.ID:
+			return new IntensityDescriptor();
+		case HsvDescriptor.ID:
+			return new HsvDescriptor();
+		case GridDescriptor.ID:
+			return new GridDescriptor();
+		case EdgeChangeDescriptor.ID:
+			return new EdgeChangeDescriptor();
+		default:
+			throw new IllegalArgumentException("unknown descriptor id: " + id);
+		}
+	}
+
+	public int size() {
+		return descriptors.length;
+	}
+
+	public FrameDescriptor get(int k) {
+		return descriptors[k];
+	}
+
+	//First column of the k-th descriptor in a row.
+	public int offset(int k) {
+		return offsets[k];
+	}
+
+	//Total number of columns in a row.
+	public int columns() {
+		return columns;
+	}
+
+	//Index of the descriptor with the given name, or -1.
+	public int indexOf(String name) {
+		for(int k = 0; k < descriptors.length; k++) {
+			if (descriptors[k].name().equals(name))
+				return k;
+		}
+		return -1;
+	}
+
+	//Whether the rows are plain intensity histograms, which the faster IntensityHistogram paths can fill.
+	public boolean isIntensityOnly() {
+		return descriptors.length == 1 && descriptors[0] instanceof IntensityDescriptor;
+	}
+
+	/*
+	 * Overwrites the row with every descriptor of the image, looking at every
+	 * stride-th pixel of every stride-th row. Images that are not backed by
+	 * BGR bytes are copied into one first.
+	 */
+	public void compute(BufferedImage image, int stride, int[] row) {
+		if (!IntensityHistogram.isBgr24(image)) {
+			BufferedImage bgr = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_3BYTE_BGR);
+			Graphics g = bgr.getGraphics();
+			g.drawImage(image, 0, 0, null);
+			g.dispose();
+			image = bgr;
+		}
+		WritableRaster raster = image.getRaster();
+		int scanline = IntensityHistogram.scanline(raster, image.getWidth());
+		computeBgr24(((DataBufferByte) raster.getDataBuffer()).getData(), IntensityHistogram.offset(raster, scanline),
+				scanline, image.getHeight(), image.getWidth(), stride, row);
+	}
+
+	/*
+	 * Same for packed BGR24 pixels, where each row starts scanline bytes after
+	 * the previous one.
+	 */
+	public void computeBgr24(byte[] data, int offset, int scanline, int height, int width, int stride, int[] row) {
+		Scanline line = LINES.get();
+		int rows = (height + stride - 1) / stride;
+		line.start((width + stride - 1) / stride, rows);
+		for(int k = 0; k < descriptors.length; k++) {
+			descriptors[k].begin(line.width, rows, row, offsets[k]);
+		}
+		int step = stride*3;
+		for(int y = 0; y < rows; y++) {
+			line.next(y, data, offset + y*stride*scanline, step);
+			for(int k = 0; k < descriptors.length; k++) {
+				descriptors[k].scanline(line, row, offsets[k]);
+			}
+		}
+	}
+
+	@Override
+	public String toString() {
+		String[] names = new String[descriptors.length];
+		for(int k = 0; k < descriptors.length; k++) {
+			names[k] = descriptors[k].name();
+		}
+		return String.join(",", names);
+	}
+}
@@ -0,0 +1,223 @@
+import java.nio.IntBuffer;
+
+/*
+ * Distances between consecutive rows of a feature matrix over a range of
+ * columns, with the mean and standard deviation of the distances worked out
+ * in the same pass. The rows are copied a pair at a time out of the matrix
+ * into int arrays, and a kernel compares the two arrays:
+ *
+ *   L1            sum of |a - b|
+ *   L2            square root of the sum of (a - b)^2
+ *   CHI_SQUARE    sum of (a - b)^2 / (a + b), over columns where a + b > 0
+ *   INTERSECTION  max(sum of a, sum of b) - sum of min(a, b)
+ *
+ * The scalar kernel here always works. VectorDistanceEngine does the same
+ * with the incubating JDK Vector API. It lives in vector/, compiled apart
+ * from the rest since it needs --add-modules jdk.incubator.vector, and is
+ * loaded by name: it is used when it is on the class path, the JVM was
+ * started with that module and it gives the same L1 distances as the scalar
+ * kernel on a test pair. The distance.engine property (scalar or
+ * vector) picks one by hand. The vector kernel pays off on wide descriptors
+ * like grid more than on the 25 intensity bins (see DistanceBenchmark). L1
+ * and intersection are exact integer sums on both; L2 and chi-square can
+ * differ in the last bits, since the vector kernel adds up in another order.
+ */
+public abstract class DistanceEngine {
+
+	public enum Metric {
+		L1, L2, CHI_SQUARE, INTERSECTION;
+
+		//Metric by name, in any case, with - or _ between words.
+		public static Metric parse(String name) {
+			return valueOf(name.trim().toUpperCase().replace('-', '_'));
+		}
+
+		//The shots.metric property, l1 when it is not set.
+		public static Metric fromProperties() {
+			return parse(System.getProperty("shots.metric", "l1"));
+		}
+	}
+
+	//Mean and sample standard deviation of some distances.
+	public static final class Stats {
+		public final int count;
+		public final double mean;
+		public final double std;
+
+		Stats(int count, double mean, double std) {
+			this.count = count;
+			this.mean = mean;
+			this.std = std;
+		}
+	}
+
+	private static DistanceEngine engine;
+
+	//The vector engine when it can be used, otherwise the scalar one.
+	public static synchronized DistanceEngine get() {
+		if (engine == null) {
+			String name = System.getProperty("distance.engine", "vector");
+			engine = name.equals("scalar") ? scalar() : vector();
+			if (engine == null) {
+				engine = scalar();
+			}
+		}
+		return engine;
+	}
+
+	public static DistanceEngine scalar() {
+		return new Scalar();
+	}
+
+	/*
+	 * The vector engine, or null when the Vector API is not there or does not
+	 * agree with the scalar kernel.
+	 */
+	public static DistanceEngine vector() {
+		try {
+			DistanceEngine vector = (DistanceEngine) Class.forName("VectorDistanceEngine")
+					.getDeclaredConstructor().newInstance();
+			int[] a = new int[37];
+			int[] b = new int[37];
+			for(int j = 0; j < a.length; j++) {
+				a[j] = j * 7919 % 1009;
+				b[j] = j * 104729 % 997;
+			}
+			if (vector.distance(a, b, 3, a.length, Metric.L1) != new Scalar().distance(a, b, 3, a.length, Metric.L1))
+				return null;
+			return vector;
+		}
+		catch (ReflectiveOperationException | LinkageError e) {
+			return null;
+		}
+	}
+
+	/*
+	 * Distance between a[from..to - 1] and b[from..to - 1]. a holds the later
+	 * row, so a metric that is not symmetric compares a against b.
+	 */
+	abstract double distance(int[] a, int[] b, int from, int to, Metric metric);
+
+	/*
+	 * Distance from row b to row a, which hold the descriptor from column
+	 * offset on. Histograms are compared with the metric, over the same
+	 * columns as consecutive; other descriptors with their own distance.
+	 */
+	public double distance(FrameDescriptor descriptor, int[] a, int[] b, int offset, Metric metric) {
+		if (!descriptor.isHistogram())
+			return descriptor.distance(a, b, offset);
+		return distance(a, b, offset + descriptor.skippedColumns(), offset + descriptor.columns(), metric);
+	}
+
+	/*
+	 * Fills distance[i] with the distance from row i - 1 to row i, for i from
+	 * 1 to rows - 1, over columns from..to - 1. Returns the mean and sample
+	 * standard deviation of those distances, added up as they are made.
+	 */
+	public Stats consecutive(FeatureMatrix matrix, int from, int to, Metric metric, double[] distance) {
+		int rows = matrix.rows();
+		int columns = matrix.columns();
+		int length = to - from;
+		IntBuffer ints = matrix.buffer().asIntBuffer();
+		int[] previous = new int[length];
+		int[] current = new int[length];
+		Moments moments = new Moments();
+		if (rows > 0) {
+			ints.get(from, previous);
+		}
+		for(int i = 1; i < rows; i++) {
+			ints.get(i * columns + from, current);
+			double d = distance(current, previous, 0, length, metric);
+			distance[i] = d;
+			moments.add(d);
+			int[] swap = previous;
+			previous = current;
+			current = swap;
+		}
+		return moments.stats();
+	}
+
+	//Statistics of values[from..to - 1], in one pass.
+	public static Stats stats(double[] values, int from, int to) {
+		Moments moments = new Moments();
+		for(int i = from; i < to; i++) {
+			moments.add(values[i]);
+		}
+		return moments.stats();
+	}
+
+	/*
+	 * Running sums of the values less the first one, which keeps the sum of
+	 * squares from cancelling out when the spread is small next to the mean.
+	 */
+	private static final class Moments {
+		private int count = 0;
+		private double shift = 0;
+		private double sum = 0;
+		private double squares = 0;
+
+		void add(double value) {
+			if (count == 0) {
+				shift = value;
+			}
+			double v = value - shift;
+			sum += v;
+			squares += v * v;
+			count++;
+		}
+
+		Stats stats() {
+			double mean = shift + sum / count;
+			double variance = (squares - sum * sum / count) / (count - 1);
+			return new Stats(count, mean, Math.sqrt(Math.max(0, variance)));
+		}
+	}
+
+	private static final class Scalar extends DistanceEngine {
+
+		@Override
+		double distance(int[] a, int[] b, int from, int to, Metric metric) {
+			switch(metric) {
+			case L1: {
+				long sum = 0;
+				for(int j = from; j < to; j++) {
+					sum += Math.abs(a[j] - b[j]);
+				}
+				return sum;
+			}
+			case L2: {
+				double sum = 0;
+				for(int j = from; j < to; j++) {
+					double d = a[j] - b[j];
+					sum += d * d;
+				}
+				return Math.sqrt(sum);
+			}
+			case CHI_SQUARE: {
+				double sum = 0;
+				for(int j = from; j < to; j++) {
+					double d = a[j] - b[j];
+					sum += d * d / Math.max(1, a[j] + b[j]);
+				}
+				return sum;
+			}
+			default: {
+				long sumA = 0;
+				long sumB = 0;
+				long common = 0;
+				for(int j = from; j < to; j++) {
+					sumA += a[j];
+					sumB += b[j];
+					common += Math.min(a[j], b[j]);
+				}
+				return Math.max(sumA, sumB) - common;
+			}
+			}
+		}
+
+		@Override
+		public String toString() {
+			return "scalar";
+		}
+	}
+}
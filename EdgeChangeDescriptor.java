@@ -0,0 +1,92 @@
+/*
+ * Edge pixels of a 4x4 grid of blocks. A pixel is an edge when the
+ * intensity steps to its left and above it add up to EDGE_THRESHOLD or more.
+ *
+ * The edge change ratio is usually taken between the edge maps of two
+ * consecutive frames, but rows are made one frame at a time, by several
+ * workers and sometimes only every k-th frame, so no frame can see the one
+ * before it. The ratio is taken between the block counts instead: the edge
+ * pixels that moved between blocks, appeared or went away, over the edge
+ * pixels of the busier frame. It is given in thousandths, since
+ * ProcessFrames adds distances up as ints.
+ */
+public class EdgeChangeDescriptor implements FrameDescriptor {
+
+	static final int ID = 4;
+	static final String NAME = "ecr";
+
+	static final int BLOCKS = 4;		//blocks across and down
+	static final int EDGE_THRESHOLD = 48;
+
+	@Override
+	public int id() {
+		return ID;
+	}
+
+	@Override
+	public String name() {
+		return NAME;
+	}
+
+	@Override
+	public int columns() {
+		return BLOCKS * BLOCKS;
+	}
+
+	@Override
+	public boolean isHistogram() {
+		return false;
+	}
+
+	@Override
+	public void scanline(DescriptorSet.Scanline line, int[] row, int offset) {
+		if (line.y == 0)
+			return;
+		int[] intensity = line.intensity;
+		int[] previous = line.previous;
+		int base = offset + line.y * BLOCKS / line.height * BLOCKS;
+		for(int bx = 0; bx < BLOCKS; bx++) {
+			int edges = 0;
+			int end = (bx + 1) * line.width / BLOCKS;
+			for(int x = Math.max(1, bx * line.width / BLOCKS); x < end; x++) {
+				int i = intensity[x];
+				if (Math.abs(i - intensity[x - 1]) + Math.abs(i - previous[x]) >= EDGE_THRESHOLD) {
+					edges++;
+				}
+			}
+			row[base + bx] += edges;
+		}
+	}
+
+	@Override
+	public double distance(FeatureMatrix matrix, int a, int b, int offset) {
+		long changed = 0;
+		long edgesA = 0;
+		long edgesB = 0;
+		for(int j = offset; j < offset + columns(); j++) {
+			int ea = matrix.get(a, j);
+			int eb = matrix.get(b, j);
+			changed += Math.abs(ea - eb);
+			edgesA += ea;
+			edgesB += eb;
+		}
+		return ratio(changed, edgesA, edgesB);
+	}
+
+	@Override
+	public double distance(int[] a, int[] b, int offset) {
+		long changed = 0;
+		long edgesA = 0;
+		long edgesB = 0;
+		for(int j = offset; j < offset + columns(); j++) {
+			changed += Math.abs(a[j] - b[j]);
+			edgesA += a[j];
+			edgesB += b[j];
+		}
+		return ratio(changed, edgesA, edgesB);
+	}
+
+	private static double ratio(long changed, long edgesA, long edgesB) {
+		return 1000.0 * changed / Math.max(1, Math.max(edgesA, edgesB));
+	}
+}
@@ -0,0 +1,156 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/*
+ * Binary version of the _frames.txt feature matrix. The file is a small
+ * header followed by the rows as little-endian ints:
+ *
+ *   int magic        'FRMS'
+ *   int version      2
+ *   int frameCount   number of rows
+ *   int binCount     number of columns in each row
+ *   int startFrame   frame number of the first row
+ *   int descriptorCount
+ *   descriptorCount * { int id, int columns }
+ *                    the FrameDescriptors that fill the row, in order
+ *   int[frameCount][binCount] rows
+ *
+ * Version 1 files have no descriptor list and hold intensity rows only.
+ * Reading maps the file and wraps the rows in a FeatureMatrix, so nothing has
+ * to be parsed or copied onto the heap.
+ */
+public class FeatureFile {
+
+	public static final String EXTENSION = "_frames.bin";
+
+	static final int MAGIC = 0x46524D53;
+	static final int VERSION = 2;
+	static final int HEADER_BYTES = 6 * 4;		//without the descriptor list
+	static final int V1_HEADER_BYTES = 5 * 4;
+
+	final int frameCount;
+	final int binCount;
+	final int startFrame;
+	final DescriptorSet descriptors;
+	final FeatureMatrix matrix;
+
+	private FeatureFile(int frameCount, int binCount, int startFrame, DescriptorSet descriptors,
+			FeatureMatrix matrix) {
+		this.frameCount = frameCount;
+		this.binCount = binCount;
+		this.startFrame = startFrame;
+		this.descriptors = descriptors;
+		this.matrix = matrix;
+	}
+
+	//Value of the given column in the given row.
+	public int get(int row, int column) {
+		return matrix.get(row, column);
+	}
+
+	//Writes the first frameCount rows of an intensity matrix.
+	public static void write(File file, int[][] matrix, int frameCount, int startFrame) throws IOException {
+		write(file, matrix, frameCount, startFrame, DescriptorSet.INTENSITY);
+	}
+
+	/*
+	 * Writes the first frameCount rows of the matrix, made of the given
+	 * descriptors, through a FileChannel a buffer at a time.
+	 */
+	public static void write(File file, int[][] matrix, int frameCount, int startFrame, DescriptorSet descriptors)
+			throws IOException {
+		int binCount = descriptors.columns();
+		if (frameCount > 0 && matrix[0].length != binCount)
+			throw new IllegalArgumentException("rows of " + matrix[0].length + " columns do not fit " + descriptors);
+		ByteBuffer buffer = ByteBuffer.allocateDirect(64 * 1024).order(ByteOrder.LITTLE_ENDIAN);
+		try (RandomAccessFile out = new RandomAccessFile(file, "rw");
+				FileChannel channel = out.getChannel()) {
+			channel.truncate(0);
+			buffer.putInt(MAGIC).putInt(VERSION).putInt(frameCount).putInt(binCount).putInt(startFrame)
+					.putInt(descriptors.size());
+			for(int k = 0; k < descriptors.size(); k++) {
+				buffer.putInt(descriptors.get(k).id()).putInt(descriptors.get(k).columns());
+			}
+			for(int i = 0; i < frameCount; i++) {
+				for(int j = 0; j < binCount; j++) {
+					if (buffer.remaining() < 4) {
+						drain(channel, buffer);
+					}
+					buffer.putInt(matrix[i][j]);
+				}
+			}
+			drain(channel, buffer);
+		}
+	}
+
+	private static void drain(FileChannel channel, ByteBuffer buffer) throws IOException {
+		buffer.flip();
+		while(buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		buffer.clear();
+	}
+
+	/*
+	 * Maps the file into memory. The mapping stays valid after the channel is
+	 * closed.
+	 */
+	public static FeatureFile map(File file) throws IOException {
+		try (RandomAccessFile in = new RandomAccessFile(file, "r");
+				FileChannel channel = in.getChannel()) {
+			MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			map.order(ByteOrder.LITTLE_ENDIAN);
+			if (map.limit() < V1_HEADER_BYTES || map.getInt(0) != MAGIC)
+				throw new IOException(file + " is not a feature file");
+			int version = map.getInt(4);
+			if (version != VERSION && version != 1)
+				throw new IOException(file + " has unsupported version " + version);
+			int frameCount = map.getInt(8);
+			int binCount = map.getInt(12);
+			int startFrame = map.getInt(16);
+			int header = V1_HEADER_BYTES;
+			DescriptorSet descriptors = DescriptorSet.INTENSITY;
+			if (version > 1) {
+				if (map.limit() < HEADER_BYTES)
+					throw new IOException(file + " is truncated");
+				int count = map.getInt(20);
+				//Bounded first, so a corrupt count cannot overflow the header size.
+				if (count < 1 || count > (map.limit() - HEADER_BYTES) / 8)
+					throw new IOException(file + " is truncated");
+				header = HEADER_BYTES + count * 8;
+				descriptors = readDescriptors(file, map, count);
+			}
+			if (descriptors.columns() != binCount)
+				throw new IOException(file + " has " + binCount + " columns but its descriptors fill "
+						+ descriptors.columns());
+			if ((long) frameCount * binCount * 4 + header > map.limit())
+				throw new IOException(file + " is truncated");
+			map.position(header);
+			return new FeatureFile(frameCount, binCount, startFrame, descriptors,
+					FeatureMatrix.wrap(map.slice(), frameCount, binCount));
+		}
+	}
+
+	private static DescriptorSet readDescriptors(File file, ByteBuffer map, int count) throws IOException {
+		FrameDescriptor[] descriptors = new FrameDescriptor[count];
+		for(int k = 0; k < count; k++) {
+			int id = map.getInt(HEADER_BYTES + k * 8);
+			try {
+				descriptors[k] = DescriptorSet.forId(id);
+			}
+			catch (IllegalArgumentException e) {
+				throw new IOException(file + " holds an unknown descriptor " + id);
+			}
+			if (descriptors[k].columns() != map.getInt(HEADER_BYTES + k * 8 + 4))
+				throw new IOException(file + " holds a " + descriptors[k].name() + " descriptor of another size");
+		}
+		if (count == 1 && descriptors[0] instanceof IntensityDescriptor)
+			return DescriptorSet.INTENSITY;
+		return new DescriptorSet(descriptors);
+	}
+}
@@ -0,0 +1,70 @@
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/*
+ * Frame feature matrix stored as flat little-endian ints, one row per frame.
+ * A matrix read from a _frames.bin file wraps the mapped rows directly and
+ * stays off the heap. A matrix built row by row (from _frames.txt) lives in a
+ * heap buffer that doubles whenever it runs out of rows.
+ */
+public class FeatureMatrix {
+
+	private ByteBuffer data;
+	private final int columns;
+	private final int rowBytes;
+	private int rows;
+	private final boolean growable;
+
+	//Makes an empty matrix that grows as rows are added.
+	FeatureMatrix(int columns) {
+		this(ByteBuffer.allocate(1024 * columns * 4), columns, 0, true);
+	}
+
+	private FeatureMatrix(ByteBuffer data, int columns, int rows, boolean growable) {
+		this.data = data.order(ByteOrder.LITTLE_ENDIAN);
+		this.columns = columns;
+		this.rowBytes = columns * 4;
+		this.rows = rows;
+		this.growable = growable;
+	}
+
+	//Wraps rows of little-endian ints that were written by FeatureFile.
+	static FeatureMatrix wrap(ByteBuffer rows, int rowCount, int columns) {
+		return new FeatureMatrix(rows, columns, rowCount, false);
+	}
+
+	public int rows() {
+		return rows;
+	}
+
+	public int columns() {
+		return columns;
+	}
+
+	public int get(int row, int column) {
+		return data.getInt(row * rowBytes + column * 4);
+	}
+
+	//Appends a row, growing the buffer when it is full.
+	public void addRow(int[] values) {
+		if (!growable)
+			throw new UnsupportedOperationException("mapped feature matrices are read only");
+		if ((rows + 1) * rowBytes > data.capacity()) {
+			ByteBuffer bigger = ByteBuffer.allocate(data.capacity() * 2).order(ByteOrder.LITTLE_ENDIAN);
+			data.position(0).limit(rows * rowBytes);
+			bigger.put(data);
+			data = bigger;
+			data.clear();
+		}
+		int base = rows * rowBytes;
+		for(int j = 0; j < columns; j++) {
+			data.putInt(base + j * 4, j < values.length ? values[j] : 0);
+		}
+		rows++;
+	}
+
+	//The backing buffer, rows() * columns() ints from position 0.
+	ByteBuffer buffer() {
+		return data;
+	}
+}
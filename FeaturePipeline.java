@@ -0,0 +1,133 @@
+import java.awt.image.BufferedImage;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/*
+ * Hands decoded BGR24 frames (or the Y planes of YUV frames) from the decoder thread to a pool of histogram
+ * workers through a bounded queue. Every frame carries the row it belongs to,
+ * so the workers can finish in any order and the matrix still comes out the
+ * same as a single threaded run. A pooled frame that comes along is
+ * released once its histogram is done.
+ */
+public class FeaturePipeline {
+
+	//Marks the end of the stream for a worker.
+	private static final Frame DONE = new Frame(null, null, null, null);
+
+	private final ProcessVideo pv;
+	private final BlockingQueue<Frame> queue;
+	private final Thread[] workers;
+	private volatile Throwable failure = null;
+
+	FeaturePipeline(ProcessVideo pv, int workerCount, int queueDepth) {
+		this.pv = pv;
+		queue = new ArrayBlockingQueue<Frame>(queueDepth);
+		workers = new Thread[workerCount];
+		for(int i = 0; i < workers.length; i++) {
+			workers[i] = new Thread(new Worker(), "histogram-" + i);
+			workers[i].setDaemon(true);
+			workers[i].start();
+		}
+	}
+
+	/*
+	 * Queues an image for the given row, blocking while the queue is full so the
+	 * decoder can never run too far ahead of the workers.
+	 */
+	public void submit(BufferedImage image, int[] row, FramePool.Frame pooled) {
+		put(new Frame(image, null, row, pooled));
+	}
+
+	//Queues the Y plane of a YUV frame for the given row.
+	public void submit(LumaPlane luma, int[] row, FramePool.Frame pooled) {
+		put(new Frame(null, luma, row, pooled));
+	}
+
+	private void put(Frame frame) {
+		checkFailure();
+		try {
+			queue.put(frame);
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("interrupted while queueing frame", e);
+		}
+	}
+
+	/*
+	 * Waits for the workers to drain the queue. After this returns every
+	 * submitted row is filled in.
+	 */
+	public void finish() {
+		try {
+			for(int i = 0; i < workers.length; i++) {
+				queue.put(DONE);
+			}
+			for(Thread worker: workers) {
+				worker.join();
+			}
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("interrupted while waiting for histogram workers", e);
+		}
+		checkFailure();
+	}
+
+	private void checkFailure() {
+		if (failure != null)
+			throw new RuntimeException("histogram worker failed", failure);
+	}
+
+	private static class Frame {
+		final BufferedImage image;
+		final LumaPlane luma;
+		final int[] row;
+		final FramePool.Frame pooled;	//released when done, may be null
+
+		Frame(BufferedImage image, LumaPlane luma, int[] row, FramePool.Frame pooled) {
+			this.image = image;
+			this.luma = luma;
+			this.row = row;
+			this.pooled = pooled;
+		}
+	}
+
+	private class Worker implements Runnable {
+		@Override
+		public void run() {
+			try {
+				Frame frame;
+				while((frame = queue.take()) != DONE) {
+					if (frame.luma != null) {
+						pv.fillBins(frame.luma, frame.row);
+					}
+					else {
+						pv.fillBins(frame.image, frame.image.getHeight(), frame.image.getWidth(), frame.row);
+					}
+					if (frame.pooled != null) {
+						frame.pooled.release();
+					}
+				}
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			catch (Throwable t) {
+				failure = t;
+				//Keep draining so the decoder is never stuck on a full queue.
+				try {
+					Frame frame;
+					while((frame = queue.take()) != DONE) {
+						if (frame.pooled != null) {
+							frame.pooled.release();
+						}
+					}
+				}
+				catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		}
+	}
+}
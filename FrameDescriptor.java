@@ -0,0 +1,57 @@
+/*
+ * One kind of frame feature. A descriptor fills a fixed number of columns of
+ * a feature row, from the pixels of a frame handed to it a scanline at a
+ * time by a DescriptorSet, and says how far apart two rows are. Descriptors
+ * hold no state of their own, so one instance serves every thread.
+ */
+public interface FrameDescriptor {
+
+	//Written to the feature file header, so it must never change.
+	int id();
+
+	String name();
+
+	int columns();
+
+	//Leading columns that are not features, like the pixel count, and are left out of the distance.
+	default int skippedColumns() {
+		return 0;
+	}
+
+	/*
+	 * Whether the feature columns are counts that the DistanceEngine metrics
+	 * can compare. Descriptors that are not measure distance their own way.
+	 */
+	default boolean isHistogram() {
+		return true;
+	}
+
+	/*
+	 * Clears the descriptor's columns of the row for a frame of the given
+	 * size, counted in sampled pixels.
+	 */
+	default void begin(int width, int height, int[] row, int offset) {
+		java.util.Arrays.fill(row, offset, offset + columns(), 0);
+	}
+
+	//Adds one scanline of the frame.
+	void scanline(DescriptorSet.Scanline line, int[] row, int offset);
+
+	//Manhattan distance over the feature columns of two rows of the matrix.
+	default double distance(FeatureMatrix matrix, int a, int b, int offset) {
+		double d = 0;
+		for(int j = offset + skippedColumns(); j < offset + columns(); j++) {
+			d += Math.abs(matrix.get(a, j) - matrix.get(b, j));
+		}
+		return d;
+	}
+
+	//Same for two rows held in arrays.
+	default double distance(int[] a, int[] b, int offset) {
+		double d = 0;
+		for(int j = offset + skippedColumns(); j < offset + columns(); j++) {
+			d += Math.abs(a[j] - b[j]);
+		}
+		return d;
+	}
+}
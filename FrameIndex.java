@@ -0,0 +1,235 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+
+import com.xuggle.xuggler.Global;
+import com.xuggle.xuggler.ICodec;
+import com.xuggle.xuggler.IContainer;
+import com.xuggle.xuggler.IPacket;
+import com.xuggle.xuggler.IRational;
+import com.xuggle.xuggler.IStream;
+
+/*
+ * Where every frame of a video is: its presentation timestamp, the byte
+ * position of its packet, and the nearest keyframe at or before it. Built
+ * once by reading the packets of the video stream (nothing is decoded) and
+ * kept next to the features. Little-endian, like FeatureFile:
+ *
+ *   int magic          'FIDX'
+ *   int version        1
+ *   int frameCount
+ *   int timeBaseNum    time base of the pts values
+ *   int timeBaseDen
+ *   long videoLength   size and modification time of the video, so a
+ *   long videoModified changed video is indexed again
+ *   frameCount * { long pts, long position, int keyFrame }
+ *
+ * Frames are numbered in presentation order from the first one in the file,
+ * the same way the decode loops count them.
+ */
+public class FrameIndex {
+
+	public static final String EXTENSION = "_index.bin";
+
+	static final int MAGIC = 0x46494458;
+	static final int VERSION = 1;
+	static final int HEADER_BYTES = 5 * 4 + 2 * 8;
+	static final int ENTRY_BYTES = 8 + 8 + 4;
+
+	private final ByteBuffer entries;
+	private final int frameCount;
+	private final int timeBaseNum;
+	private final int timeBaseDen;
+
+	private FrameIndex(ByteBuffer entries, int frameCount, int timeBaseNum, int timeBaseDen) {
+		this.entries = entries;
+		this.frameCount = frameCount;
+		this.timeBaseNum = timeBaseNum;
+		this.timeBaseDen = timeBaseDen;
+	}
+
+	public int size() {
+		return frameCount;
+	}
+
+	//Presentation timestamp of the frame, in the stream's time base.
+	public long getPts(int frame) {
+		return entries.getLong(frame * ENTRY_BYTES);
+	}
+
+	//Presentation timestamp of the frame in microseconds, like IVideoPicture.getTimeStamp.
+	public long getTimeStamp(int frame) {
+		return toMicros(getPts(frame));
+	}
+
+	//Byte position of the frame's packet in the file, -1 if the container does not say.
+	public long getPosition(int frame) {
+		return entries.getLong(frame * ENTRY_BYTES + 8);
+	}
+
+	//Number of the keyframe decoding has to start from to get to the frame.
+	public int getKeyFrame(int frame) {
+		return entries.getInt(frame * ENTRY_BYTES + 16);
+	}
+
+	long toMicros(long pts) {
+		return pts * timeBaseNum * Global.DEFAULT_PTS_PER_SECOND / timeBaseDen;
+	}
+
+	/*
+	 * Seeks the container to the keyframe decoding has to start from to get
+	 * to the frame, and returns the timestamp of the frame so the pictures in
+	 * between can be skipped. Returns -1 when the container could not seek,
+	 * which leaves it where it was.
+	 */
+	public long seek(IContainer container, int videoStreamId, int frame) {
+		int key = getKeyFrame(frame);
+		long pts = getPts(key);
+		long position = getPosition(key);
+		if (container.seekKeyFrame(videoStreamId, pts, pts, pts, 0) < 0
+				&& (position < 0
+				|| container.seekKeyFrame(videoStreamId, position, position, position, IContainer.SEEK_FLAG_BYTE) < 0))
+			return -1;
+		return getTimeStamp(frame);
+	}
+
+	/*
+	 * Loads the index kept next to the video, or builds and saves it when it
+	 * is missing or the video has changed since. Returns null if the video
+	 * cannot be indexed.
+	 */
+	public static FrameIndex forVideo(String filename) {
+		File video = new File(filename);
+		File file = new File(filename + EXTENSION);
+		if (file.isFile()) {
+			try {
+				if (isCurrent(file, video))
+					return map(file);
+			}
+			catch (IOException e) {
+				System.out.println("The file " + file + " could not be read, indexing the video again");
+			}
+		}
+
+		long started = System.nanoTime();
+		FrameIndex index = build(filename);
+		if (index == null)
+			return null;
+		System.out.printf("Indexed %d frames of %s in %.1f s%n", index.size(), filename,
+				(System.nanoTime() - started) / 1e9);
+		try {
+			index.write(file, video);
+		}
+		catch (IOException e) {
+			System.out.println("The file " + file + " could not be written: " + e.getMessage());
+		}
+		return index;
+	}
+
+	private static boolean isCurrent(File file, File video) throws IOException {
+		try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+			ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+			in.getChannel().read(header, 0);
+			return header.getLong(20) == video.length() && header.getLong(28) == video.lastModified();
+		}
+	}
+
+	/*
+	 * Reads the packets of the first video stream and puts their frames in
+	 * presentation order. Returns null if the file cannot be opened or has no
+	 * video stream.
+	 */
+	@SuppressWarnings("deprecation")
+	public static FrameIndex build(String filename) {
+		IContainer container = IContainer.make();
+		if (container.open(filename, IContainer.Type.READ, null) < 0)
+			return null;
+		try {
+			int videoStreamId = -1;
+			IStream stream = null;
+			for(int i = 0; i < container.getNumStreams(); i++) {
+				IStream candidate = container.getStream(i);
+				if (candidate.getStreamCoder().getCodecType() == ICodec.Type.CODEC_TYPE_VIDEO) {
+					videoStreamId = i;
+					stream = candidate;
+					break;
+				}
+			}
+			if (stream == null)
+				return null;
+
+			ArrayList<long[]> packets = new ArrayList<long[]>();	//{ pts, position, key }
+			IPacket packet = IPacket.make();
+			while(container.readNextPacket(packet) >= 0) {
+				if (packet.getStreamIndex() != videoStreamId)
+					continue;
+				long pts = packet.getPts() != Global.NO_PTS ? packet.getPts() : packet.getDts();
+				packets.add(new long[] { pts, packet.getPosition(), packet.isKeyPacket() ? 1 : 0 });
+			}
+			long[][] frames = packets.toArray(new long[packets.size()][]);
+			Arrays.sort(frames, Comparator.comparingLong(frame -> frame[0]));
+
+			ByteBuffer entries = ByteBuffer.allocate(frames.length * ENTRY_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+			int keyFrame = 0;
+			for(int i = 0; i < frames.length; i++) {
+				if (frames[i][2] != 0) {
+					keyFrame = i;
+				}
+				entries.putLong(frames[i][0]).putLong(frames[i][1]).putInt(keyFrame);
+			}
+			IRational timeBase = stream.getTimeBase();
+			return new FrameIndex(entries, frames.length, timeBase.getNumerator(), timeBase.getDenominator());
+		}
+		finally {
+			container.close();
+		}
+	}
+
+	void write(File file, File video) throws IOException {
+		ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+		header.putInt(MAGIC).putInt(VERSION).putInt(frameCount).putInt(timeBaseNum).putInt(timeBaseDen)
+				.putLong(video.length()).putLong(video.lastModified());
+		header.flip();
+		ByteBuffer body = entries.duplicate();
+		body.clear();
+		try (RandomAccessFile out = new RandomAccessFile(file, "rw");
+				FileChannel channel = out.getChannel()) {
+			channel.truncate(0);
+			while(header.hasRemaining()) {
+				channel.write(header);
+			}
+			while(body.hasRemaining()) {
+				channel.write(body);
+			}
+		}
+	}
+
+	/*
+	 * Maps an index file into memory. The mapping stays valid after the
+	 * channel is closed.
+	 */
+	public static FrameIndex map(File file) throws IOException {
+		try (RandomAccessFile in = new RandomAccessFile(file, "r");
+				FileChannel channel = in.getChannel()) {
+			MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			map.order(ByteOrder.LITTLE_ENDIAN);
+			if (map.limit() < HEADER_BYTES || map.getInt(0) != MAGIC)
+				throw new IOException(file + " is not a frame index");
+			if (map.getInt(4) != VERSION)
+				throw new IOException(file + " has unsupported version " + map.getInt(4));
+			int frameCount = map.getInt(8);
+			if (HEADER_BYTES + (long) frameCount * ENTRY_BYTES > map.limit())
+				throw new IOException(file + " is truncated");
+			map.position(HEADER_BYTES);
+			ByteBuffer entries = map.slice().order(ByteOrder.LITTLE_ENDIAN);
+			return new FrameIndex(entries, frameCount, map.getInt(12), map.getInt(16));
+		}
+	}
+}
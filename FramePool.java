@@ -0,0 +1,172 @@
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.xuggle.xuggler.IPixelFormat;
+import com.xuggle.xuggler.IStreamCoder;
+import com.xuggle.xuggler.IVideoPicture;
+import com.xuggle.xuggler.IVideoResampler;
+import com.xuggle.xuggler.video.ConverterFactory;
+import com.xuggle.xuggler.video.IConverter;
+
+/*
+ * A small ring of reusable frames for a decode loop. Each frame holds the
+ * picture the decoder writes into, the BGR24 picture the resampler writes
+ * into and the image the BGR24 bytes are copied into, so after the first
+ * laps of the ring a frame costs no new native pictures and no new images.
+ * The converter is made once per stream.
+ *
+ * A frame stays out of the ring until it is released, so a stage further
+ * down a pipeline can hold on to it. The ring hands out new frames until it
+ * holds size of them, then waits for the oldest free one. With size 0
+ * nothing is reused, like the decode loops were before.
+ */
+public class FramePool {
+
+	private final IStreamCoder coder;
+	private final IVideoResampler resampler;
+	private final String filename;
+	private final int size;
+	private final BlockingQueue<Frame> free;
+	private final AtomicInteger framesMade = new AtomicInteger();
+	private final AtomicInteger picturesMade = new AtomicInteger();
+	private final AtomicInteger imagesMade = new AtomicInteger();
+	private IConverter converter;
+
+	public FramePool(IStreamCoder coder, IVideoResampler resampler, int size, String filename) {
+		this.coder = coder;
+		this.resampler = resampler;
+		this.size = size;
+		this.filename = filename;
+		free = new ArrayBlockingQueue<Frame>(Math.max(1, size));
+	}
+
+	/*
+	 * Returns a frame to decode into, waiting for one to be released when the
+	 * whole ring is in use.
+	 */
+	public Frame acquire() {
+		if (size <= 0 || framesMade.get() < size) {
+			framesMade.incrementAndGet();
+			return new Frame();
+		}
+		try {
+			return free.take();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("interrupted while waiting for a free frame", e);
+		}
+	}
+
+	//Native pictures made so far, decoder and resampler ones together.
+	public int getPicturesMade() {
+		return picturesMade.get();
+	}
+
+	//Images made so far.
+	public int getImagesMade() {
+		return imagesMade.get();
+	}
+
+	private IVideoPicture makePicture(IPixelFormat.Type type, int width, int height) {
+		picturesMade.incrementAndGet();
+		return IVideoPicture.make(type, width, height);
+	}
+
+	private synchronized IConverter converter(IVideoPicture picture) {
+		if (converter == null || size <= 0) {
+			converter = ConverterFactory.createConverter(ConverterFactory.XUGGLER_BGR_24, picture);
+		}
+		return converter;
+	}
+
+	public class Frame {
+
+		//Where the decoder puts the next picture.
+		public final IVideoPicture picture;
+		private IVideoPicture bgr;
+		private BufferedImage image;
+
+		private Frame() {
+			picture = makePicture(coder.getPixelType(), coder.getWidth(), coder.getHeight());
+		}
+
+		/*
+		 * The picture as BGR24, resampled into this frame's own output picture
+		 * when the stream is in another format.
+		 */
+		public IVideoPicture toBgr() {
+			IVideoPicture newPic = picture;
+			if (resampler != null)
+			{
+				if (bgr == null || size <= 0) {
+					bgr = makePicture(resampler.getOutputPixelFormat(),
+							resampler.getOutputWidth(), resampler.getOutputHeight());
+				}
+				if (resampler.resample(bgr, picture) < 0)
+					throw new RuntimeException("could not resample video from: " + filename);
+				newPic = bgr;
+			}
+			if (newPic.getPixelType() != IPixelFormat.Type.BGR24)
+				throw new RuntimeException("could not decode video as BGR 24 bit data in: " + filename);
+			return newPic;
+		}
+
+		/*
+		 * The picture as an image. The image belongs to the frame and is
+		 * written over the next time the frame is used.
+		 */
+		public BufferedImage toImage() {
+			if (size <= 0) {
+				IVideoPicture newPic = toBgr();
+				imagesMade.incrementAndGet();
+				return converter(newPic).toImage(newPic);
+			}
+			image = copyTo(image);
+			return image;
+		}
+
+		/*
+		 * Copies the picture as BGR24 into the given image and returns it. A new
+		 * image is made when the given one is null or of another size.
+		 */
+		public BufferedImage copyTo(BufferedImage target) {
+			IVideoPicture newPic = toBgr();
+			int width = newPic.getWidth();
+			int height = newPic.getHeight();
+			if (newPic.getDataLineSize(0) != width * 3) {
+				imagesMade.incrementAndGet();
+				return converter(newPic).toImage(newPic);
+			}
+			if (target == null || target.getWidth() != width || target.getHeight() != height) {
+				imagesMade.incrementAndGet();
+				target = new BufferedImage(width, height, BufferedImage.TYPE_3BYTE_BGR);
+			}
+			byte[] data = ((DataBufferByte) target.getRaster().getDataBuffer()).getData();
+			newPic.getData().get(0, data, 0, data.length);
+			return target;
+		}
+
+		/*
+		 * Same as toImage, but the image is handed over to the caller and the
+		 * frame makes a new one next time.
+		 */
+		public BufferedImage detachImage() {
+			BufferedImage result = toImage();
+			if (result == image) {
+				image = null;
+			}
+			return result;
+		}
+
+		//Puts the frame back in the ring.
+		public void release() {
+			if (size > 0) {
+				free.offer(this);
+			}
+		}
+	}
+}
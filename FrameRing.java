@@ -0,0 +1,88 @@
+import java.util.function.Supplier;
+
+/*
+ * Bounded ring of reusable slots between one producer thread and one consumer
+ * thread. The producer claims the next free slot, fills it in and publishes
+ * it; the consumer takes slots in order. The consumer keeps the slot it took
+ * last until it takes the next one, so a frame that is on screen is never
+ * written over.
+ *
+ * Every claim and publish carries the generation the producer is working
+ * for. flush starts a new generation and drops everything not yet taken by
+ * moving the write index back to the read index, the same amount of work no
+ * matter how full the ring is. Slots claimed for an old generation are
+ * quietly not published.
+ */
+public class FrameRing<T> {
+
+	private final Object[] slots;
+	private final Supplier<T> factory;
+	private long write = 0;		//next slot to publish
+	private long read = 0;		//next slot to take
+	private long held = -1;		//slot the consumer took last, -1 for none
+	private long generation = 0;
+
+	//Slots are made by the factory the first time they are claimed.
+	public FrameRing(int capacity, Supplier<T> factory) {
+		slots = new Object[capacity];
+		this.factory = factory;
+	}
+
+	/*
+	 * Returns the next slot to fill in, waiting while the ring is full. Returns
+	 * null when the ring is flushed to another generation in the meantime.
+	 */
+	@SuppressWarnings("unchecked")
+	public synchronized T claim(long forGeneration) throws InterruptedException {
+		while(forGeneration == generation && write - oldest() >= slots.length) {
+			wait();
+		}
+		if (forGeneration != generation)
+			return null;
+		int index = (int) (write % slots.length);
+		if (slots[index] == null) {
+			slots[index] = factory.get();
+		}
+		return (T) slots[index];
+	}
+
+	//Hands the claimed slot to the consumer, unless the ring was flushed since.
+	public synchronized boolean publish(long forGeneration) {
+		if (forGeneration != generation)
+			return false;
+		write++;
+		notifyAll();
+		return true;
+	}
+
+	/*
+	 * Takes the next slot, waiting while there is none. The slot taken before
+	 * goes back to the producer.
+	 */
+	@SuppressWarnings("unchecked")
+	public synchronized T take() throws InterruptedException {
+		while(read == write) {
+			wait();
+		}
+		held = read;
+		read++;
+		notifyAll();
+		return (T) slots[(int) (held % slots.length)];
+	}
+
+	//Number of slots published and not yet taken.
+	public synchronized int available() {
+		return (int) (write - read);
+	}
+
+	//Drops every slot not yet taken and moves on to the given generation.
+	public synchronized void flush(long newGeneration) {
+		generation = newGeneration;
+		write = read;
+		notifyAll();
+	}
+
+	private long oldest() {
+		return held >= 0 ? held : read;
+	}
+}
@@ -0,0 +1,41 @@
+/*
+ * Intensity histograms of a 4x4 grid of blocks, 8 levels each, so two frames
+ * with the same overall histogram but the light in different places still
+ * differ. Block (bx, by) holds columns (by*4 + bx)*8 to (by*4 + bx)*8 + 7.
+ */
+public class GridDescriptor implements FrameDescriptor {
+
+	static final int ID = 3;
+	static final String NAME = "grid";
+
+	static final int BLOCKS = 4;		//blocks across and down
+	static final int LEVELS = 8;
+
+	@Override
+	public int id() {
+		return ID;
+	}
+
+	@Override
+	public String name() {
+		return NAME;
+	}
+
+	@Override
+	public int columns() {
+		return BLOCKS * BLOCKS * LEVELS;
+	}
+
+	@Override
+	public void scanline(DescriptorSet.Scanline line, int[] row, int offset) {
+		int[] intensity = line.intensity;
+		int by = line.y * BLOCKS / line.height;
+		for(int bx = 0; bx < BLOCKS; bx++) {
+			int base = offset + (by * BLOCKS + bx) * LEVELS;
+			int end = (bx + 1) * line.width / BLOCKS;
+			for(int x = bx * line.width / BLOCKS; x < end; x++) {
+				row[base + (intensity[x] >> 5)]++;
+			}
+		}
+	}
+}
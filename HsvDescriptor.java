@@ -0,0 +1,76 @@
+import java.awt.Color;
+
+/*
+ * Histogram of quantised HSV colour: 8 hues by 2 saturations by 3 values,
+ * then 4 columns of greys for pixels with too little saturation for their hue
+ * to mean anything. Tells apart frames whose brightness is alike but whose
+ * colours are not, like a pan from the pitch to the stands.
+ *
+ * The bin of every colour with 5 bits per channel is worked out up front, so
+ * a pixel costs one table lookup.
+ */
+public class HsvDescriptor implements FrameDescriptor {
+
+	static final int ID = 2;
+	static final String NAME = "hsv";
+
+	static final int HUES = 8;
+	static final int SATURATIONS = 2;
+	static final int VALUES = 3;
+	static final int GREYS = 4;
+	static final int COLUMNS = HUES * SATURATIONS * VALUES + GREYS;
+
+	//Saturation below which a pixel counts as grey.
+	private static final float GREY_SATURATION = 0.15f;
+
+	private static final byte[] BIN = new byte[1 << 15];
+
+	static {
+		float[] hsb = new float[3];
+		for(int rgb = 0; rgb < BIN.length; rgb++) {
+			//Middle of the 8x8x8 cube of colours that share the entry.
+			int red = (rgb >> 10 << 3) + 4;
+			int green = ((rgb >> 5 & 31) << 3) + 4;
+			int blue = ((rgb & 31) << 3) + 4;
+			Color.RGBtoHSB(red, green, blue, hsb);
+			int bin;
+			if (hsb[1] < GREY_SATURATION) {
+				bin = HUES * SATURATIONS * VALUES + Math.min(GREYS - 1, (int) (hsb[2] * GREYS));
+			}
+			else {
+				int hue = Math.min(HUES - 1, (int) (hsb[0] * HUES));
+				int saturation = Math.min(SATURATIONS - 1,
+						(int) ((hsb[1] - GREY_SATURATION) / (1 - GREY_SATURATION) * SATURATIONS));
+				int value = Math.min(VALUES - 1, (int) (hsb[2] * VALUES));
+				bin = (hue * SATURATIONS + saturation) * VALUES + value;
+			}
+			BIN[rgb] = (byte) bin;
+		}
+	}
+
+	@Override
+	public int id() {
+		return ID;
+	}
+
+	@Override
+	public String name() {
+		return NAME;
+	}
+
+	@Override
+	public int columns() {
+		return COLUMNS;
+	}
+
+	@Override
+	public void scanline(DescriptorSet.Scanline line, int[] row, int offset) {
+		byte[] bgr = line.bgr;
+		int p = line.p;
+		for(int x = 0; x < line.width; x++) {
+			int rgb = (bgr[p + 2] & 0xf8) << 7 | (bgr[p + 1] & 0xf8) << 2 | (bgr[p] & 0xff) >> 3;
+			row[offset + BIN[rgb]]++;
+			p += line.step;
+		}
+	}
+}
@@ -0,0 +1,44 @@
+/*
+ * The 26 column intensity histogram (see IntensityHistogram): column 0 holds
+ * the number of pixels looked at and columns 1 - 25 the bins 0-9, 10-19, ...,
+ * 240-255. The pixel count is left out of the distance.
+ */
+public class IntensityDescriptor implements FrameDescriptor {
+
+	static final int ID = 1;
+	static final String NAME = "intensity";
+
+	@Override
+	public int id() {
+		return ID;
+	}
+
+	@Override
+	public String name() {
+		return NAME;
+	}
+
+	@Override
+	public int columns() {
+		return IntensityHistogram.BINS;
+	}
+
+	@Override
+	public int skippedColumns() {
+		return 1;
+	}
+
+	@Override
+	public void begin(int width, int height, int[] row, int offset) {
+		FrameDescriptor.super.begin(width, height, row, offset);
+		row[offset] = width * height;
+	}
+
+	@Override
+	public void scanline(DescriptorSet.Scanline line, int[] row, int offset) {
+		int[] intensity = line.intensity;
+		for(int x = 0; x < line.width; x++) {
+			row[offset + IntensityHistogram.bin(intensity[x])]++;
+		}
+	}
+}
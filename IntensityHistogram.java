@@ -0,0 +1,199 @@
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBufferByte;
+import java.awt.image.WritableRaster;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/*
+ * Builds the 26 column intensity row used by ProcessFrames. Column 0 holds the
+ * number of pixels and columns 1 - 25 hold the bins 0-9, 10-19, ..., 240-255.
+ *
+ * The fast path reads the bytes behind a TYPE_3BYTE_BGR image directly instead
+ * of calling getRGB and making a Color for every pixel. The luma products are
+ * looked up in tables that hold the exact doubles the .299/.587/.114 formula
+ * produces, so the bins come out identical to the legacy path.
+ *
+ * Planar YUV frames can skip the BGR conversion altogether: the luma path
+ * bins the Y plane the decoder already made. The decoder rounds Y from the
+ * same .299/.587/.114 weights, so after stretching limited range Y back to
+ * 0-255 the intensity is within one level of the formula. Over every RGB
+ * colour about 3% of pixels, the ones right on a bin edge, land one bin over.
+ */
+public final class IntensityHistogram {
+
+	public static final int BINS = 26;
+
+	//Luma product of every channel value, and the bin of every intensity.
+	private static final double[] RED = new double[256];
+	private static final double[] GREEN = new double[256];
+	private static final double[] BLUE = new double[256];
+	private static final int[] BIN = new int[256];
+	//Bin of every limited range (16-235) Y value.
+	private static final int[] LIMITED_BIN = new int[256];
+
+	static {
+		for(int v = 0; v < 256; v++) {
+			RED[v] = .299*v;
+			GREEN[v] = .587*v;
+			BLUE[v] = 0.114*v;
+			BIN[v] = v < 250 ? v/10 + 1 : 25;
+		}
+		for(int y = 0; y < 256; y++) {
+			int intensity = Math.max(0, Math.min(255, (int) ((y - 16) * 255 / 219.0)));
+			LIMITED_BIN[y] = BIN[intensity];
+		}
+	}
+
+	private IntensityHistogram() {
+	}
+
+	/*
+	 * Overwrites bins with the histogram of the image. Images that are not
+	 * backed by BGR bytes go through the legacy path.
+	 */
+	public static void histogram(BufferedImage image, int height, int width, int[] bins) {
+		histogram(image, height, width, 1, bins);
+	}
+
+	/*
+	 * Same as above, but only looks at every stride-th pixel of every
+	 * stride-th row. Column 0 then holds the number of pixels looked at.
+	 */
+	public static void histogram(BufferedImage image, int height, int width, int stride, int[] bins) {
+		WritableRaster raster = image.getRaster();
+		if(!isBgr24(image)) {
+			if(stride > 1) {
+				image = sample(image, height, width, stride);
+				height = image.getHeight();
+				width = image.getWidth();
+			}
+			legacyHistogram(image, height, width, bins);
+			return;
+		}
+		int scanline = scanline(raster, width);
+		histogramBgr24(((DataBufferByte) raster.getDataBuffer()).getData(), offset(raster, scanline), scanline,
+				height, width, stride, bins);
+	}
+
+	//Whether the fast path can read the bytes behind the image.
+	static boolean isBgr24(BufferedImage image) {
+		return image.getType() == BufferedImage.TYPE_3BYTE_BGR
+				&& image.getRaster().getDataBuffer() instanceof DataBufferByte;
+	}
+
+	//Bytes from one row of a BGR24 raster to the next.
+	static int scanline(WritableRaster raster, int width) {
+		if(raster.getSampleModel() instanceof ComponentSampleModel) {
+			return ((ComponentSampleModel) raster.getSampleModel()).getScanlineStride();
+		}
+		return width*3;
+	}
+
+	//Index of the first pixel of a BGR24 raster in its buffer.
+	static int offset(WritableRaster raster, int scanline) {
+		//Sub images share the parent's buffer, so step past the translation.
+		return raster.getDataBuffer().getOffset() - raster.getSampleModelTranslateY()*scanline
+				- raster.getSampleModelTranslateX()*3;
+	}
+
+	//Intensity of a pixel, exactly as the .299/.587/.114 formula truncates it.
+	static int intensity(int blue, int green, int red) {
+		return (int) (RED[red] + GREEN[green] + BLUE[blue]);
+	}
+
+	//Column of the row that counts the given intensity.
+	static int bin(int intensity) {
+		return BIN[intensity];
+	}
+
+	/*
+	 * Overwrites bins with the histogram of packed BGR24 pixels, where each row
+	 * starts scanline bytes after the previous one.
+	 */
+	public static void histogramBgr24(byte[] data, int offset, int scanline, int height, int width, int[] bins) {
+		histogramBgr24(data, offset, scanline, height, width, 1, bins);
+	}
+
+	//Packed BGR24 version of the strided histogram.
+	public static void histogramBgr24(byte[] data, int offset, int scanline, int height, int width,
+			int stride, int[] bins) {
+		Arrays.fill(bins, 0);
+		int rows = (height + stride - 1) / stride;
+		int columns = (width + stride - 1) / stride;
+		bins[0] = rows * columns;
+		int step = stride*3;
+		for(int i = 0; i < height; i += stride) {
+			int p = offset + i*scanline;
+			int end = p + width*3;
+			while(p < end) {
+				int intensity = (int) (RED[data[p + 2] & 0xff] + GREEN[data[p + 1] & 0xff]
+						+ BLUE[data[p] & 0xff]);
+				bins[BIN[intensity]]++;
+				p += step;
+			}
+		}
+	}
+
+	/*
+	 * Overwrites bins with the histogram of every stride-th pixel of every
+	 * stride-th row of an 8 bit Y plane, where each row starts lineSize bytes
+	 * after the previous one. fullRange is for YUVJ pictures, whose Y already
+	 * spans 0-255.
+	 */
+	public static void histogramLuma(ByteBuffer plane, int offset, int lineSize, int height, int width,
+			int stride, boolean fullRange, int[] bins) {
+		int[] bin = fullRange ? BIN : LIMITED_BIN;
+		Arrays.fill(bins, 0);
+		int rows = (height + stride - 1) / stride;
+		int columns = (width + stride - 1) / stride;
+		bins[0] = rows * columns;
+		for(int i = 0; i < height; i += stride) {
+			int p = offset + i*lineSize;
+			int end = p + width;
+			while(p < end) {
+				bins[bin[plane.get(p) & 0xff]]++;
+				p += stride;
+			}
+		}
+	}
+
+	//Every stride-th pixel of every stride-th row, for images the fast path can't read.
+	private static BufferedImage sample(BufferedImage image, int height, int width, int stride) {
+		BufferedImage sampled = new BufferedImage((width + stride - 1) / stride,
+				(height + stride - 1) / stride, BufferedImage.TYPE_INT_RGB);
+		for(int i = 0; i < sampled.getHeight(); i++) {
+			for(int j = 0; j < sampled.getWidth(); j++) {
+				sampled.setRGB(j, i, image.getRGB(j*stride, i*stride));
+			}
+		}
+		return sampled;
+	}
+
+	/*
+	 * The original getRGB/Color implementation. Kept so the fast path can be
+	 * checked against it.
+	 */
+	public static void legacyHistogram(BufferedImage image, int height, int width, int[] bins) {
+		Color color = null;
+		int intensity = 0;
+
+		Arrays.fill(bins, 0);
+		bins[0] = height * width;
+		for(int i = 0; i < height; i++) {
+			for(int j = 0; j < width; j++) {
+				color = new Color(image.getRGB(j, i));
+				//Intensity equation
+				intensity = (int) (.299*color.getRed() + .587*color.getGreen()
+						+ 0.114*color.getBlue());
+				if (intensity < 250) {
+					bins[(int) (intensity/10) + 1]++;
+				}
+				else {
+					bins[25]++;
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,48 @@
+import java.nio.ByteBuffer;
+
+import com.xuggle.xuggler.IPixelFormat;
+import com.xuggle.xuggler.IVideoPicture;
+
+/*
+ * The Y plane of a decoded planar YUV picture, so its intensity histogram can
+ * be taken without resampling the picture to BGR24 first. Holds on to the
+ * picture so its buffer stays alive while a worker reads it.
+ */
+public class LumaPlane {
+
+	private final IVideoPicture picture;
+	private final ByteBuffer plane;
+	private final int lineSize;
+	private final boolean fullRange;
+
+	private LumaPlane(IVideoPicture picture, ByteBuffer plane, int lineSize, boolean fullRange) {
+		this.picture = picture;
+		this.plane = plane;
+		this.lineSize = lineSize;
+		this.fullRange = fullRange;
+	}
+
+	/*
+	 * Returns the Y plane of the picture, or null when it is not YUV420P or
+	 * YUVJ420P and has to go through the BGR24 path.
+	 */
+	public static LumaPlane of(IVideoPicture picture) {
+		IPixelFormat.Type type = picture.getPixelType();
+		if (type != IPixelFormat.Type.YUV420P && type != IPixelFormat.Type.YUVJ420P)
+			return null;
+		int lineSize = picture.getDataLineSize(0);
+		if (lineSize < picture.getWidth())
+			return null;
+		//Plane 0 is the first lineSize * height bytes of the buffer.
+		ByteBuffer plane = picture.getData().getByteBuffer(0, lineSize * picture.getHeight());
+		if (plane == null)
+			return null;
+		return new LumaPlane(picture, plane, lineSize, type == IPixelFormat.Type.YUVJ420P);
+	}
+
+	//Overwrites bins with the histogram of every stride-th pixel of every stride-th row.
+	public void histogram(int stride, int[] bins) {
+		IntensityHistogram.histogramLuma(plane, 0, lineSize, picture.getHeight(), picture.getWidth(),
+				stride, fullRange, bins);
+	}
+}
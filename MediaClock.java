@@ -0,0 +1,24 @@
+/*
+ * The clock playback is timed against, in stream time (microseconds, the
+ * same units as IVideoPicture and IAudioSamples timestamps). It is stopped
+ * until the first frame after a reset starts it.
+ */
+public interface MediaClock {
+
+	//Returned by time while the clock is stopped.
+	long STOPPED = Long.MIN_VALUE;
+
+	//Current stream time, or STOPPED.
+	long time();
+
+	//Starts the clock at the given stream time, if it is stopped.
+	void start(long streamTime);
+
+	//The audio chunk with the given timestamp is the first to be played since the reset.
+	void audioStarted(long streamTime);
+
+	//Stops the clock, for a new range of frames.
+	void reset();
+
+	void setPaused(boolean paused);
+}
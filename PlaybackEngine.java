@@ -0,0 +1,447 @@
+import java.awt.image.BufferedImage;
+
+import javax.sound.sampled.SourceDataLine;
+
+import com.xuggle.xuggler.IAudioSamples;
+import com.xuggle.xuggler.IContainer;
+import com.xuggle.xuggler.IPacket;
+import com.xuggle.xuggler.IStreamCoder;
+import com.xuggle.xuggler.IVideoPicture;
+import com.xuggle.xuggler.IVideoResampler;
+
+/*
+ * Plays a range of frames on three threads instead of one:
+ *
+ *   decoder       reads and decodes packets, and fills a ring of ready to show
+ *                 images and a ring of audio chunks, running ahead of the
+ *                 picture until the rings are full
+ *   presenter     takes the images in order and shows each one when the clock
+ *                 reaches its timestamp, dropping frames that are already late
+ *                 when a newer one is waiting (see AVSync)
+ *   audio         writes the chunks to the sound line, so a blocking write
+ *                 never holds up decoding or the picture
+ *
+ * Starting another range flushes both rings at once (see FrameRing), and the
+ * decoder drops what it was doing and seeks. With a FrameIndex it seeks to
+ * the keyframe before the first frame and decodes forward to exactly that
+ * frame; how long that takes is measured against seek.budgetMillis. When the
+ * PrerollCache holds the opening frames of the range they go out first; the
+ * decoder still seeks to the first frame, so the sound under them is played,
+ * but only shows pictures from the frame after them. Every range is played
+ * under its own generation, which the Display is given back so that news
+ * about a range that has since been replaced can be told apart (see
+ * PlayerController).
+ */
+public class PlaybackEngine implements PlayerController.Player {
+
+	//Where the frames go.
+	interface Display {
+		void show(BufferedImage image);
+
+		//The first frame of the range played under the given generation is decoded.
+		void ready(long generation);
+
+		//The range played under the given generation has been played to its end.
+		void finished(long generation);
+	}
+
+	static final int VIDEO_FRAMES = 8;		//decoded frames the decoder may run ahead
+	static final int AUDIO_CHUNKS = 32;		//decoded audio chunks the decoder may run ahead
+	static final long POLL_MICROS = 10000;	//longest wait before the clock is looked at again
+	static final long DEFAULT_SEEK_BUDGET_MILLIS = 100;	//from play to the first frame decoded
+	//With -Dplayback.stats=true slow seeks and the counters at the end of each shot are printed.
+	static final boolean STATS = Boolean.getBoolean("playback.stats");
+
+	private final IContainer container;
+	private final IStreamCoder videoCoder;
+	private final IStreamCoder audioCoder;
+	private final int videoStreamId;
+	private final int audioStreamId;
+	private final SourceDataLine line;
+	private final Display display;
+	private final FramePool pool;
+	private final AVSync sync;
+	private final FrameIndex index;
+	private PrerollCache preroll;
+	private final long seekBudgetNanos = Long.getLong("seek.budgetMillis", DEFAULT_SEEK_BUDGET_MILLIS) * 1000000;
+
+	private final FrameRing<VideoSlot> video = new FrameRing<VideoSlot>(VIDEO_FRAMES, VideoSlot::new);
+	private final FrameRing<AudioSlot> audio = new FrameRing<AudioSlot>(AUDIO_CHUNKS, AudioSlot::new);
+
+	//Guards the fields below.
+	private final Object lock = new Object();
+	private long generation = 0;		//bumped by every play
+	private int startFrame;
+	private int endFrame;
+	private long requested;				//nanoTime of the last play
+	private boolean paused = true;
+
+	//Written by the decoder thread only.
+	private volatile long seeks = 0;
+	private volatile long overBudget = 0;
+	private volatile long skippedFrames = 0;	//decoded on the way from a keyframe
+	private volatile long totalSeekNanos = 0;
+	private volatile long maxSeekNanos = 0;
+
+	PlaybackEngine(IContainer container, IStreamCoder videoCoder, IVideoResampler resampler, int videoStreamId,
+			IStreamCoder audioCoder, int audioStreamId, SourceDataLine line, AVSync sync, FrameIndex index,
+			String filename, Display display) {
+		this.container = container;
+		this.videoCoder = videoCoder;
+		this.audioCoder = audioCoder;
+		this.videoStreamId = videoStreamId;
+		this.audioStreamId = line != null ? audioStreamId : -1;
+		this.line = line;
+		this.display = display;
+		this.sync = sync;
+		this.index = index;
+		pool = new FramePool(videoCoder, resampler, 1, filename);
+	}
+
+	//Uses the opening frames in the cache, and keeps it filled around what is played. Set before start.
+	public void setPreroll(PrerollCache preroll) {
+		this.preroll = preroll;
+	}
+
+	//Starts the threads. Nothing plays until play is called.
+	public void start() {
+		startThread(this::decode, "decoder");
+		startThread(this::present, "presenter");
+		if (line != null) {
+			startThread(this::playAudio, "audio");
+		}
+	}
+
+	private static void startThread(Runnable body, String name) {
+		Thread thread = new Thread(body, name);
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/*
+	 * Drops whatever is queued and plays the frames start..end from the start.
+	 * Stays paused if it was. Returns the generation of the new range.
+	 */
+	@Override
+	public long play(int start, int end) {
+		long current;
+		synchronized(lock) {
+			current = ++generation;
+			startFrame = start;
+			endFrame = end;
+			requested = System.nanoTime();
+			video.flush(generation);
+			audio.flush(generation);
+			if (line != null) {
+				line.flush();
+			}
+			sync.reset();
+			lock.notifyAll();
+		}
+		if (preroll != null) {
+			preroll.prefetchAround(start);
+		}
+		return current;
+	}
+
+	@Override
+	public void setPaused(boolean pause) {
+		synchronized(lock) {
+			if (paused == pause)
+				return;
+			paused = pause;
+			if (line != null) {
+				if (pause) {
+					line.stop();
+				}
+				else {
+					line.start();
+				}
+			}
+			sync.setPaused(pause);
+			lock.notifyAll();
+		}
+	}
+
+	public boolean isPaused() {
+		synchronized(lock) {
+			return paused;
+		}
+	}
+
+	//Live drift and frame counters.
+	public AVSync getSync() {
+		return sync;
+	}
+
+	public String getSeekStats() {
+		return String.format("%d seeks, mean %.1f ms, max %.1f ms, %d over %d ms, %d frames decoded to reach them",
+				seeks, seeks == 0 ? 0 : totalSeekNanos / 1e6 / seeks, maxSeekNanos / 1e6, overBudget,
+				seekBudgetNanos / 1000000, skippedFrames);
+	}
+
+	private void decode() {
+		long handled = 0;
+		IPacket packet = IPacket.make();
+		FramePool.Frame frame = pool.acquire();
+		IAudioSamples samples = audioCoder != null ? IAudioSamples.make(1024, audioCoder.getChannels()) : null;
+		try {
+			while(true) {
+				long current;
+				int count;
+				int end;
+				long since;
+				synchronized(lock) {
+					while(generation == handled) {
+						lock.wait();
+					}
+					current = generation;
+					count = startFrame;
+					end = endFrame;
+					since = requested;
+				}
+				handled = current;
+
+				int first = count;
+				boolean started = false;
+				PrerollCache.Preroll cached = preroll != null ? preroll.get(count) : null;
+				if (cached != null) {
+					for(int i = 0; i < cached.size() && count < end; i++) {
+						VideoSlot slot = video.claim(current);
+						if (slot == null)
+							break;
+						slot.image = PrerollCache.copy(cached.images[i], slot.image);
+						slot.timestamp = cached.timestamps[i];
+						slot.generation = current;
+						count++;
+						slot.last = count == end;
+						if (video.publish(current) && !started) {
+							started = true;
+							seeked(first, 0, since);
+							display.ready(current);
+						}
+					}
+					if (!isCurrent(current) || count == end)
+						continue;
+				}
+
+				//Pictures before this time are decoded but not played, and so is sound before the first frame.
+				//After a preroll the seek still goes back to the first frame, for the sound under the cached pictures.
+				long audioFrom = seek(first);
+				long from = audioFrom;
+				if (cached != null) {
+					//Past the end of the index only the last cached picture's timestamp is known.
+					from = count < index.size() ? index.getTimeStamp(count) : index.getTimeStamp(count - 1) + 1;
+				}
+				int skipped = 0;
+				boolean ended = true;
+				while(count < end && isCurrent(current))
+				{
+					if (container.readNextPacket(packet) < 0)
+						break;
+
+					if (packet.getStreamIndex() == videoStreamId)
+					{
+						IVideoPicture picture = frame.picture;
+						int bytesDecoded = videoCoder.decodeVideo(picture, packet, 0);
+						if (bytesDecoded < 0)
+							throw new RuntimeException("got error decoding video");
+						if (!picture.isComplete())
+							continue;
+						if (picture.getTimeStamp() < from) {
+							skipped++;
+							continue;
+						}
+
+						VideoSlot slot = video.claim(current);
+						if (slot == null) {
+							ended = false;
+							break;
+						}
+						slot.image = frame.copyTo(slot.image);
+						slot.timestamp = picture.getTimeStamp();
+						slot.generation = current;
+						count++;
+						slot.last = count == end;
+						if (video.publish(current) && !started) {
+							started = true;
+							seeked(count - 1, skipped, since);
+							display.ready(current);
+						}
+					}
+					else if (packet.getStreamIndex() == audioStreamId)
+					{
+						//removed error checking because it allowed the code to avoid
+						//negative bytesDecoded and therefore the video continutes fine.
+						audioCoder.decodeAudio(samples, packet, 0);
+						if (samples.isComplete() && samples.getTimeStamp() >= audioFrom)
+						{
+							AudioSlot slot = audio.claim(current);
+							if (slot == null) {
+								ended = false;
+								break;
+							}
+							slot.copy(samples);
+							slot.timestamp = samples.getTimeStamp();
+							slot.generation = current;
+							audio.publish(current);
+						}
+					}
+				}
+
+				//The video ran out before the end of the range.
+				if (ended && count < end && isCurrent(current)) {
+					VideoSlot slot = video.claim(current);
+					if (slot != null) {
+						slot.image = null;
+						slot.last = true;
+						slot.generation = current;
+						if (video.publish(current) && !started) {
+							display.ready(current);
+						}
+					}
+				}
+			}
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/*
+	 * Seeks to the keyframe before the given frame and returns the timestamp
+	 * of the frame, so the ones in between can be skipped. Without an index
+	 * the frame number is taken as the timestamp and nothing is skipped.
+	 */
+	private long seek(int frame) {
+		if (index == null || frame >= index.size()) {
+			//Use this method to seek to the specified starting frame.
+			container.seekKeyFrame(0, frame - 1, frame, frame + 1, IContainer.SEEK_FLAG_ANY);
+			return Long.MIN_VALUE;
+		}
+		return index.seek(container, videoStreamId, frame);
+	}
+
+	//Counts a seek that got to its first frame.
+	private void seeked(int frame, int skipped, long since) {
+		long took = System.nanoTime() - since;
+		seeks++;
+		skippedFrames += skipped;
+		totalSeekNanos += took;
+		maxSeekNanos = Math.max(maxSeekNanos, took);
+		if (took > seekBudgetNanos) {
+			overBudget++;
+			if (STATS)
+				System.out.printf("Seek to frame %d took %.1f ms, %d frames decoded from the keyframe%n",
+						frame, took / 1e6, skipped);
+		}
+	}
+
+	private void present() {
+		try {
+			while(true) {
+				VideoSlot slot = video.take();
+				if (present(slot) && slot.last) {
+					display.finished(slot.generation);
+				}
+			}
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/*
+	 * Shows the slot when it is due. A pause while waiting holds on to it until
+	 * playback resumes. Returns false when the slot was dropped or belongs to
+	 * a range that is no longer playing.
+	 */
+	private boolean present(VideoSlot slot) throws InterruptedException {
+		while(true) {
+			long current = waitWhilePaused();
+			//Taken just before another range was started.
+			if (slot.generation != current)
+				return false;
+			if (slot.image == null)
+				return true;
+			long wait = sync.decide(slot.timestamp, !slot.last && video.available() > 0);
+			if (wait == AVSync.DROP)
+				return false;
+			if (wait == 0) {
+				display.show(slot.image);
+				sync.shown(slot.timestamp);
+				return true;
+			}
+			//The clock is looked at again after a while, it may not run evenly.
+			sleep(Math.min(wait, POLL_MICROS), current);
+		}
+	}
+
+	private void playAudio() {
+		try {
+			while(true) {
+				AudioSlot slot = audio.take();
+				if (slot.generation != waitWhilePaused())
+					continue;
+				sync.getClock().audioStarted(slot.timestamp);
+				// note: this call will block if Java's sound buffers fill up, and we're
+				// okay with that.  That's why the video runs on another thread.
+				line.write(slot.data, 0, slot.length);
+			}
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	//Blocks while paused, then returns the generation being played.
+	private long waitWhilePaused() throws InterruptedException {
+		synchronized(lock) {
+			while(paused) {
+				lock.wait();
+			}
+			return generation;
+		}
+	}
+
+	private boolean isCurrent(long current) {
+		synchronized(lock) {
+			return generation == current;
+		}
+	}
+
+	//Waits for the given time, or until the range changes or playback is paused.
+	private void sleep(long micros, long current) throws InterruptedException {
+		synchronized(lock) {
+			long due = System.nanoTime() + micros * 1000;
+			while(generation == current && !paused) {
+				long left = (due - System.nanoTime()) / 1000000;
+				if (left <= 0)
+					return;
+				lock.wait(left);
+			}
+		}
+	}
+
+	private static class VideoSlot {
+		BufferedImage image;	//null marks the end of the video
+		long timestamp;
+		boolean last;
+		long generation;
+	}
+
+	private static class AudioSlot {
+		byte[] data = new byte[0];
+		int length;
+		long timestamp;
+		long generation;
+
+		void copy(IAudioSamples samples) {
+			length = samples.getSize();
+			if (data.length < length) {
+				data = new byte[length];
+			}
+			samples.getData().get(0, data, 0, length);
+		}
+	}
+}
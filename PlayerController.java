@@ -0,0 +1,274 @@
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.LockSupport;
+
+/*
+ * Owns the playback state. Any thread may send a command (play, pause,
+ * toggle, seek, select a shot); the commands go on a lock-free queue and one
+ * control thread carries them out in order against the Player, waking up as
+ * soon as one is sent. Nothing else touches the state, so nothing needs a lock.
+ *
+ *   IDLE        no shot selected yet
+ *   SEEKING     a range has been started and its first frame is not decoded yet
+ *   PLAYING
+ *   PAUSED
+ *
+ * Seeking keeps whether playback was running or paused, and selecting a shot
+ * pauses at its start like before. When several seeks or shot selections are
+ * queued back to back only the last one is played. A range that reaches its
+ * end pauses playback, unless another range has been started since.
+ */
+public class PlayerController {
+
+	enum State { IDLE, SEEKING, PLAYING, PAUSED }
+
+	//What the controller drives, PlaybackEngine or a stand-in.
+	interface Player {
+		//Starts the frames start..end and returns the generation they are played under.
+		long play(int start, int end);
+
+		void setPaused(boolean paused);
+	}
+
+	//Told about every change of state or range, on the control thread.
+	interface Listener {
+		void stateChanged(State state, int startFrame, int endFrame);
+	}
+
+	private enum Kind { PLAY, PAUSE, TOGGLE, SEEK, SELECT, READY, FINISHED, STOP }
+
+	//A command sent to the controller, which the sender can wait on.
+	static class Command {
+		private final Kind kind;
+		private final long sent = System.nanoTime();
+		private final int start;		//frame for SEEK and SELECT
+		private final int end;			//end frame for SELECT
+		private final long generation;	//for READY and FINISHED
+		private volatile boolean done = false;
+
+		private Command(Kind kind, int start, int end, long generation) {
+			this.kind = kind;
+			this.start = start;
+			this.end = end;
+			this.generation = generation;
+		}
+
+		public boolean isDone() {
+			return done;
+		}
+
+		/*
+		 * Waits until the command has been carried out. Returns false if that
+		 * takes longer than the timeout.
+		 */
+		public boolean await(long timeoutNanos) {
+			long due = System.nanoTime() + timeoutNanos;
+			while(!done) {
+				if (System.nanoTime() - due >= 0)
+					return false;
+				LockSupport.parkNanos(50000);
+			}
+			return true;
+		}
+	}
+
+	private final Player player;
+	private final Listener listener;
+	private final ConcurrentLinkedQueue<Command> commands = new ConcurrentLinkedQueue<Command>();
+	private volatile Thread thread;
+
+	//Written by the control thread only.
+	private volatile State state = State.IDLE;
+	private volatile long handled = 0;
+	private volatile long superseded = 0;		//seeks and selections skipped for a later one
+	private volatile long maxLatency = 0;		//nanos from send to done
+	private volatile long totalLatency = 0;
+	private boolean playing = false;
+	private boolean selected = false;
+	private int startFrame;
+	private int endFrame;
+	private long generation = -1;		//of the range last started
+	private boolean seeking = false;
+	private boolean finishedEarly = false;	//the range ended before READY came for it
+
+	public PlayerController(Player player, Listener listener) {
+		this.player = player;
+		this.listener = listener;
+	}
+
+	//Starts the control thread.
+	public void start() {
+		Thread control = new Thread(this::run, "player control");
+		control.setDaemon(true);
+		thread = control;
+		control.start();
+	}
+
+	//Stops the control thread once the commands sent so far are done.
+	public Command stop() {
+		return send(Kind.STOP, 0, 0, 0);
+	}
+
+	public Command play() {
+		return send(Kind.PLAY, 0, 0, 0);
+	}
+
+	public Command pause() {
+		return send(Kind.PAUSE, 0, 0, 0);
+	}
+
+	public Command toggle() {
+		return send(Kind.TOGGLE, 0, 0, 0);
+	}
+
+	//Moves to the given frame of the selected shot.
+	public Command seek(int frame) {
+		return send(Kind.SEEK, frame, 0, 0);
+	}
+
+	//Selects the shot start..end, paused at its first frame.
+	public Command selectShot(int start, int end) {
+		return send(Kind.SELECT, start, end, 0);
+	}
+
+	//The first frame of the range started under the given generation is decoded.
+	public void rangeReady(long forGeneration) {
+		send(Kind.READY, 0, 0, forGeneration);
+	}
+
+	//The range started under the given generation has been played to its end.
+	public void rangeFinished(long forGeneration) {
+		send(Kind.FINISHED, 0, 0, forGeneration);
+	}
+
+	private Command send(Kind kind, int start, int end, long forGeneration) {
+		Command command = new Command(kind, start, end, forGeneration);
+		commands.add(command);
+		LockSupport.unpark(thread);
+		return command;
+	}
+
+	public State getState() {
+		return state;
+	}
+
+	//Commands carried out so far.
+	public long getHandled() {
+		return handled;
+	}
+
+	public long getSuperseded() {
+		return superseded;
+	}
+
+	//Longest time from sending a command to it being carried out, in milliseconds.
+	public double getMaxLatencyMillis() {
+		return maxLatency / 1e6;
+	}
+
+	public double getMeanLatencyMillis() {
+		return handled == 0 ? 0 : totalLatency / 1e6 / handled;
+	}
+
+	private void run() {
+		while(true) {
+			Command command = commands.poll();
+			if (command == null) {
+				LockSupport.park(this);
+				continue;
+			}
+			if (command.kind == Kind.STOP) {
+				acknowledge(command);
+				return;
+			}
+			State before = state;
+			int beforeStart = startFrame;
+			int beforeEnd = endFrame;
+			carryOut(command, commands.peek());
+			state = !selected ? State.IDLE : seeking ? State.SEEKING : playing ? State.PLAYING : State.PAUSED;
+			acknowledge(command);
+			if (state != before || startFrame != beforeStart || endFrame != beforeEnd) {
+				listener.stateChanged(state, startFrame, endFrame);
+			}
+		}
+	}
+
+	private void carryOut(Command command, Command next) {
+		switch(command.kind) {
+		case PLAY:
+			setPlaying(selected);
+			break;
+		case PAUSE:
+			setPlaying(false);
+			break;
+		case TOGGLE:
+			setPlaying(selected && !playing);
+			break;
+		case SEEK:
+			if (!selected)
+				break;
+			startRange(Math.max(startFrame, Math.min(command.start, endFrame - 1)), next);
+			break;
+		case SELECT:
+			selected = true;
+			startFrame = command.start;
+			endFrame = command.end;
+			setPlaying(false);
+			startRange(startFrame, next);
+			break;
+		case READY:
+			if (command.generation == generation) {
+				seeking = false;
+				if (finishedEarly) {
+					finishedEarly = false;
+					setPlaying(false);
+				}
+			}
+			break;
+		case FINISHED:
+			if (command.generation != generation)
+				break;
+			//The engine may hand the last frame over before READY is seen, so wait for it.
+			if (seeking) {
+				finishedEarly = true;
+			}
+			else {
+				setPlaying(false);
+			}
+			break;
+		default:
+			break;
+		}
+	}
+
+	private void setPlaying(boolean play) {
+		if (play != playing) {
+			playing = play;
+			player.setPaused(!play);
+		}
+	}
+
+	//Starts from the given frame, unless another seek or selection is already waiting.
+	private void startRange(int from, Command next) {
+		if (next != null && (next.kind == Kind.SEEK || next.kind == Kind.SELECT)) {
+			superseded++;
+			return;
+		}
+		generation = player.play(from, endFrame);
+		seeking = true;
+		finishedEarly = false;
+	}
+
+	private void acknowledge(Command command) {
+		long latency = System.nanoTime() - command.sent;
+		maxLatency = Math.max(maxLatency, latency);
+		totalLatency += latency;
+		handled++;
+		command.done = true;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%s, %d commands (%d superseded), latency mean %.3f ms, max %.3f ms",
+				state, handled, superseded, getMeanLatencyMillis(), getMaxLatencyMillis());
+	}
+}
@@ -0,0 +1,269 @@
+import java.awt.Graphics;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingDeque;
+
+import com.xuggle.xuggler.ICodec;
+import com.xuggle.xuggler.IContainer;
+import com.xuggle.xuggler.IPacket;
+import com.xuggle.xuggler.IPixelFormat;
+import com.xuggle.xuggler.IStreamCoder;
+import com.xuggle.xuggler.IVideoPicture;
+import com.xuggle.xuggler.IVideoResampler;
+
+/*
+ * The first few decoded frames of the shots around the one being watched, so
+ * switching to a neighbouring shot shows motion straight away while the
+ * player decodes its way past them (see PlaybackEngine). A background
+ * thread decodes them from its own container, so it never gets in the way
+ * of playback.
+ *
+ * Every time a shot is played the shots after and before it are queued,
+ * then the shot itself, and whatever was still queued for an earlier shot
+ * is dropped. The frames are held in LRU order within preroll.maxMB
+ * (128 MB by default); preroll.frames (8 by default) frames are kept per shot.
+ */
+public class PrerollCache {
+
+	static final int DEFAULT_FRAMES = 8;
+	static final long DEFAULT_MAX_MB = 128;
+
+	//The opening frames of one shot.
+	static class Preroll {
+		final BufferedImage[] images;
+		final long[] timestamps;
+		final long bytes;
+
+		Preroll(BufferedImage[] images, long[] timestamps) {
+			this.images = images;
+			this.timestamps = timestamps;
+			long total = 0;
+			for(BufferedImage image: images) {
+				total += (long) image.getWidth() * image.getHeight() * 3;
+			}
+			bytes = total;
+		}
+
+		public int size() {
+			return images.length;
+		}
+	}
+
+	private final String filename;
+	private final FrameIndex index;
+	private final int[] shotStarts;		//sorted
+	private final int lastFrame;
+	private final int frames;
+	private final long maxBytes;
+
+	private final LinkedHashMap<Integer, Preroll> cache = new LinkedHashMap<Integer, Preroll>(16, 0.75f, true);
+	private final LinkedBlockingDeque<Integer> pending = new LinkedBlockingDeque<Integer>();
+	private long bytes = 0;
+	private long hits = 0;
+	private long misses = 0;
+	private long evictions = 0;
+	private long decoded = 0;
+
+	/*
+	 * Shots start at the given frames and the last one ends at lastFrame. Only
+	 * videos with a FrameIndex can be pre-rolled, since playback has to carry
+	 * on from exactly the frame after the cached ones.
+	 */
+	public PrerollCache(String filename, FrameIndex index, int[] shotStarts, int lastFrame) {
+		this(filename, index, shotStarts, lastFrame, Integer.getInteger("preroll.frames", DEFAULT_FRAMES),
+				Long.getLong("preroll.maxMB", DEFAULT_MAX_MB) * 1024 * 1024);
+	}
+
+	PrerollCache(String filename, FrameIndex index, int[] shotStarts, int lastFrame, int frames, long maxBytes) {
+		this.filename = filename;
+		this.index = index;
+		this.shotStarts = shotStarts.clone();
+		Arrays.sort(this.shotStarts);
+		this.lastFrame = lastFrame;
+		this.frames = frames;
+		this.maxBytes = maxBytes;
+	}
+
+	//Starts the background thread.
+	public void start() {
+		Thread thread = new Thread(this::run, "preroll");
+		thread.setDaemon(true);
+		thread.setPriority(Thread.MIN_PRIORITY);
+		thread.start();
+	}
+
+	/*
+	 * Returns the opening frames of the shot starting at the given frame, or
+	 * null. Either way counts as a hit or miss.
+	 */
+	public synchronized Preroll get(int startFrame) {
+		Preroll preroll = cache.get(startFrame);
+		if (preroll != null) {
+			hits++;
+		}
+		else {
+			misses++;
+		}
+		return preroll;
+	}
+
+	//Queues the shots around the one starting at the given frame.
+	public void prefetchAround(int startFrame) {
+		int shot = Arrays.binarySearch(shotStarts, startFrame);
+		if (shot < 0)
+			return;
+		pending.clear();
+		for(int neighbour: new int[] { shot + 1, shot - 1, shot }) {
+			if (neighbour >= 0 && neighbour < shotStarts.length) {
+				pending.add(shotStarts[neighbour]);
+			}
+		}
+	}
+
+	private synchronized boolean contains(int startFrame) {
+		return cache.containsKey(startFrame);
+	}
+
+	private synchronized void put(int startFrame, Preroll preroll) {
+		Preroll old = cache.put(startFrame, preroll);
+		if (old != null) {
+			bytes -= old.bytes;
+		}
+		bytes += preroll.bytes;
+		decoded += preroll.size();
+		Iterator<Map.Entry<Integer, Preroll>> eldest = cache.entrySet().iterator();
+		while(bytes > maxBytes && eldest.hasNext()) {
+			Map.Entry<Integer, Preroll> entry = eldest.next();
+			if (entry.getKey() == startFrame)
+				continue;
+			bytes -= entry.getValue().bytes;
+			eldest.remove();
+			evictions++;
+		}
+	}
+
+	@SuppressWarnings("deprecation")
+	private void run() {
+		IContainer container = IContainer.make();
+		if (container.open(filename, IContainer.Type.READ, null) < 0) {
+			System.out.println("Pre-roll could not open " + filename);
+			return;
+		}
+		int videoStreamId = -1;
+		IStreamCoder videoCoder = null;
+		for(int i = 0; i < container.getNumStreams(); i++) {
+			IStreamCoder coder = container.getStream(i).getStreamCoder();
+			if (coder.getCodecType() == ICodec.Type.CODEC_TYPE_VIDEO) {
+				videoStreamId = i;
+				videoCoder = coder;
+				break;
+			}
+		}
+		if (videoCoder == null || videoCoder.open() < 0) {
+			System.out.println("Pre-roll could not decode " + filename);
+			container.close();
+			return;
+		}
+		IVideoResampler resampler = null;
+		if (videoCoder.getPixelType() != IPixelFormat.Type.BGR24) {
+			resampler = IVideoResampler.make(videoCoder.getWidth(), videoCoder.getHeight(), IPixelFormat.Type.BGR24,
+					videoCoder.getWidth(), videoCoder.getHeight(), videoCoder.getPixelType());
+		}
+
+		FramePool pool = new FramePool(videoCoder, resampler, 1, filename);
+		IPacket packet = IPacket.make();
+		try {
+			while(true) {
+				int start = pending.take();
+				if (contains(start))
+					continue;
+				Preroll preroll = decode(start, container, packet, videoCoder, videoStreamId, pool);
+				if (preroll != null) {
+					put(start, preroll);
+				}
+			}
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		finally {
+			videoCoder.close();
+			container.close();
+		}
+	}
+
+	//Decodes the opening frames of the shot starting at the given frame.
+	private Preroll decode(int start, IContainer container, IPacket packet, IStreamCoder videoCoder,
+			int videoStreamId, FramePool pool) {
+		int shot = Arrays.binarySearch(shotStarts, start);
+		int end = shot + 1 < shotStarts.length ? shotStarts[shot + 1] : lastFrame;
+		int count = Math.min(frames, Math.min(end, index.size()) - start);
+		if (count <= 0)
+			return null;
+
+		BufferedImage[] images = new BufferedImage[count];
+		long[] timestamps = new long[count];
+		long from = index.seek(container, videoStreamId, start);
+		if (from < 0)
+			return null;
+		int made = 0;
+		FramePool.Frame frame = pool.acquire();
+		try {
+			while(made < count && container.readNextPacket(packet) >= 0) {
+				if (packet.getStreamIndex() != videoStreamId)
+					continue;
+				IVideoPicture picture = frame.picture;
+				if (videoCoder.decodeVideo(picture, packet, 0) < 0)
+					return null;
+				if (!picture.isComplete() || picture.getTimeStamp() < from)
+					continue;
+				images[made] = frame.detachImage();
+				timestamps[made] = picture.getTimeStamp();
+				made++;
+			}
+		}
+		finally {
+			frame.release();
+		}
+		if (made < count)
+			return null;
+		return new Preroll(images, timestamps);
+	}
+
+	/*
+	 * Copies the pixels of a cached image into the given one and returns it.
+	 * A new image is made when the given one is null or of another kind.
+	 */
+	static BufferedImage copy(BufferedImage source, BufferedImage target) {
+		if (target == null || target.getWidth() != source.getWidth() || target.getHeight() != source.getHeight()
+				|| target.getType() != source.getType()) {
+			target = new BufferedImage(source.getWidth(), source.getHeight(),
+					source.getType() != BufferedImage.TYPE_CUSTOM ? source.getType() : BufferedImage.TYPE_3BYTE_BGR);
+		}
+		if (source.getRaster().getDataBuffer() instanceof DataBufferByte
+				&& target.getRaster().getDataBuffer() instanceof DataBufferByte) {
+			byte[] from = ((DataBufferByte) source.getRaster().getDataBuffer()).getData();
+			byte[] to = ((DataBufferByte) target.getRaster().getDataBuffer()).getData();
+			if (from.length == to.length) {
+				System.arraycopy(from, 0, to, 0, from.length);
+				return target;
+			}
+		}
+		Graphics g = target.getGraphics();
+		g.drawImage(source, 0, 0, null);
+		g.dispose();
+		return target;
+	}
+
+	@Override
+	public synchronized String toString() {
+		long total = hits + misses;
+		return String.format("%d hits, %d misses (%.0f%%), %d shots held in %.1f MB, %d evicted, %d frames decoded",
+				hits, misses, total == 0 ? 0 : 100.0 * hits / total, cache.size(), bytes / 1048576.0, evictions,
+				decoded);
+	}
+}
@@ -1,25 +1,91 @@
 import java.io.File;
 import java.io.FileNotFoundException;
-import java.util.ArrayList;
+import java.io.IOException;
+import java.util.Arrays;
 import java.util.Scanner;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
 
 /*
  * This class reads the video feature matrix from a file and uses
  * Twin-comparison approach to find the beginnings of each shot.
+ *
+ * Frames are compared with one of the FrameDescriptors in the feature file:
+ * the one named by the shots.descriptor property when the file has it,
+ * otherwise the first one, which is the intensity histogram unless
+ * ProcessVideo was told otherwise. The shots.metric property picks how
+ * histograms are compared (l1 by default, l2, chi-square or intersection,
+ * see DistanceEngine). The thresholds can be changed with the shots.cutStd,
+ * shots.transitionMean and shots.tor properties (see AnalysisSession, which
+ * also runs the detection again with other thresholds in microseconds).
+ *
+ * tb and ts come from the mean and standard deviation of all the distances,
+ * unless the shots.window property gives a number of frames: then every frame
+ * gets its own from the distances around it (see AdaptiveThresholds).
+ *
+ * Long videos are cut into segments of shots.segment distances that are
+ * scanned in parallel on the common fork-join pool, with the transitions
+ * that run across segment ends joined up afterwards.
  */
 public class ProcessFrames {
 
-	private Double [][] frameMatrix = new Double [4000][26];
+	//Defaults of tb = mean + std*CUT_STD_MULTIPLIER, ts = mean*TRANSITION_MEAN_MULTIPLIER
+	static final double CUT_STD_MULTIPLIER = 11;
+	static final double TRANSITION_MEAN_MULTIPLIER = 2;
+	static final int DEFAULT_TOR = 2;
+	//_frames.txt has no header, it always held the frames from 1000 on.
+	static final int TEXT_START_FRAME = 1000;
+
+	private FeatureMatrix frameMatrix = new FeatureMatrix(26);
+	private AnalysisSession.Parameters parameters = AnalysisSession.Parameters.fromProperties();
 	private double tb = 0;			//threshold for cut
 	private double ts = 0;			//threshold for transition
-	private int tor = 2;			//frame stop threshold
-	private ArrayList<Integer> firstFrames = new ArrayList<Integer>();
+	private int tor = parameters.tor;	//frame stop threshold
+	private int window = Integer.getInteger("shots.window", 0);	//frames behind local thresholds, 0 for global
+	private int startFrame = TEXT_START_FRAME;	//frame number of the first row
+	private FrameDescriptor descriptor = DescriptorSet.INTENSITY.get(0);
+	private int descriptorOffset = 0;	//first column of the descriptor in a row
+	private DistanceEngine.Metric metric = DistanceEngine.Metric.fromProperties();
+	private int segment = Integer.getInteger("shots.segment", 1 << 16);	//distances per parallel segment, 0 for one scan
+	private int[] firstFrames = new int[0];
+	private double[] distance = new double[1];
+	private DistanceEngine.Stats stats;
 
+	//Reads the binary feature file when there is one, otherwise the text file.
 	ProcessFrames(String filename) {
-		readFrameFile(filename + "_frames.txt");
+		File binary = new File(filename + FeatureFile.EXTENSION);
+		if (binary.exists()) {
+			readBinaryFile(binary);
+		}
+		else {
+			readFrameFile(filename + "_frames.txt");
+		}
+		findFirstFrames();
+	}
+
+	//Reads the given _frames.bin file, wherever it is.
+	ProcessFrames(File features) {
+		readBinaryFile(features);
 		findFirstFrames();
 	}
 
+	//Uses the rows of a mapped _frames.bin file as the matrix.
+	public void readBinaryFile(File file) {
+		try {
+			FeatureFile features = FeatureFile.map(file);
+			frameMatrix = features.matrix;
+			startFrame = features.startFrame;
+			DescriptorSet descriptors = features.descriptors;
+			int k = Math.max(0, descriptors.indexOf(System.getProperty("shots.descriptor", "")));
+			descriptor = descriptors.get(k);
+			descriptorOffset = descriptors.offset(k);
+		}
+		catch (IOException e) {
+			System.out.println("The file " + file + " could not be read: " + e.getMessage());
+		}
+	}
+
 	
 	public void readFrameFile(String filename){
 		Scanner read = null;
@@ -32,52 +98,102 @@ public class ProcessFrames {
 
 
 			/* loops through the files and constructs a matrix with
-			 * intensity values.
+			 * intensity values, one row of 26 at a time for as many
+			 * rows as the file holds.
 			 */
-			for(int i = 0; i < frameMatrix.length; i++) {
-				for(int j = 0; j < frameMatrix[0].length; j++) {
-					frameMatrix[i][j] = read.nextDouble();
+			int[] row = new int[frameMatrix.columns()];
+			while(read.hasNext()) {
+				for(int j = 0; j < row.length; j++) {
+					row[j] = (int) read.nextDouble();
 				}
+				frameMatrix.addRow(row);
 			}
 		}
 		catch(FileNotFoundException EE){
 			System.out.println("The file " + filename + " does not exist");
 		}
 		finally {
-			read.close();
+			if (read != null) {
+				read.close();
+			}
 		}
 	}
 
 	//Finds the distance between each frame, puts it in an array and uses that array
-	//to find the cuts and transitions, then sorts them by their frame values.
+	//to find the cuts and transitions, in frame order.
 	private void findFirstFrames() {
-		double [] distance = new double[frameMatrix.length];
-		ArrayList<Integer> cuts = new ArrayList<Integer>();
-		ArrayList<Integer> transitions = new ArrayList<Integer>();
-
-
 		distance = findDistance(frameMatrix);
 
-		cuts = findCuts(distance);
-		transitions = findTransitions(distance);
+		double[] tbs = null;
+		double[] tss = null;
+		if (window > 0) {
+			AdaptiveThresholds local = new AdaptiveThresholds(distance, window, parameters, tb, ts);
+			tbs = local.tb;
+			tss = local.ts;
+		}
+		//Segments only pay off with more than one thread to run them.
+		firstFrames = detect(distance, tbs, tss, ForkJoinPool.getCommonPoolParallelism() > 1 ? segment : 0);
+	}
+
+	/*
+	 * Cuts and transitions together, sorted. Over segment distances they are
+	 * found a segment at a time on the fork-join pool (see Segment), otherwise
+	 * in one scan; both give the same frames.
+	 */
+	private int[] detect(double[] distance, double[] tbs, double[] tss, int segment) {
+		if (segment <= 0 || distance.length <= segment)
+			return merge(findCuts(distance, tbs), findTransitions(distance, tbs, tss));
 
-		firstFrames.addAll(cuts);
-		firstFrames.addAll(transitions);
+		Segment[] segments = new Segment[(distance.length - 2) / segment + 1];
+		for(int k = 0; k < segments.length; k++) {
+			int from = 1 + k * segment;
+			segments[k] = new Segment(distance, tbs, tss, from, Math.min(distance.length, from + segment));
+		}
+		ForkJoinTask.invokeAll(segments);
 
-		firstFrames.sort(null);
+		//Each segment assumed no transition was open when it began; put that right in order.
+		Scan scan = new Scan();
+		int cutCount = 0;
+		int transitionCount = 0;
+		for(Segment part: segments) {
+			scan = part.stitch(scan);
+			cutCount += part.cuts.length;
+			transitionCount += part.transitions.length;
+		}
+		int[] cuts = new int[cutCount];
+		int[] transitions = new int[transitionCount];
+		cutCount = 0;
+		transitionCount = 0;
+		for(Segment part: segments) {
+			System.arraycopy(part.cuts, 0, cuts, cutCount, part.cuts.length);
+			cutCount += part.cuts.length;
+			System.arraycopy(part.transitions, 0, transitions, transitionCount, part.transitions.length);
+			transitionCount += part.transitions.length;
+		}
+		return merge(cuts, transitions);
 	}
 
 	//Cycles through distances and if the value is greater than or equal
-	//to the cut threshold, add it to the cuts.
-	private ArrayList<Integer> findCuts(double[] distance) {
-		ArrayList<Integer> results = new ArrayList<Integer>();
-		for(int i = 1; i < distance.length; i++) {
-			if(distance[i] >= tb) {
+	//to the cut threshold, add it to the cuts. tbs holds a cut threshold
+	//for every frame, or is null to use tb for all.
+	private int[] findCuts(double[] distance, double[] tbs) {
+		return findCuts(distance, tbs, 1, distance.length);
+	}
+
+	//Cuts among distance[from..to - 1].
+	private int[] findCuts(double[] distance, double[] tbs, int from, int to) {
+		int[] results = new int[16];
+		int count = 0;
+		for(int i = from; i < to; i++) {
+			if(distance[i] >= (tbs == null ? tb : tbs[i])) {
+				if (count == results.length) {
+					results = Arrays.copyOf(results, count * 2);
+				}
 				//Have to add 1 because Ce is frame i + 1
-				results.add(i + 1 + 1000);
+				results[count++] = i + 1 + startFrame;
 			}
 		}
-		return results;
+		return Arrays.copyOf(results, count);
 	}
 
 	/*
@@ -86,98 +202,226 @@ public class ProcessFrames {
 	 * If value is greater than tb restart the count. If the value is below
 	 * ts, increment the under count, and if that ever = tor, we check and see
 	 * if the sum of our differences in frame is > tb.
+	 * tbs and tss hold thresholds for every frame, or are null to use tb and
+	 * ts for all. The sum of a transition is held to tb where it started.
 	 */
-	private ArrayList<Integer> findTransitions(double[] distance) {
-		ArrayList<Integer> results = new ArrayList<Integer>();
-		int fscan = 0;
-		int fecan = 0;
-		int under = 0;
+	private int[] findTransitions(double[] distance, double[] tbs, double[] tss) {
+		int[] results = new int[16];
+		int count = 0;
+		Scan scan = new Scan();
 		for(int i = 1; i < distance.length; i++) {
-			if(ts <= distance[i] && distance[i] < tb) {
-				if(fscan == 0) {
-					fscan = i;
+			int frame = step(distance, tbs, tss, i, scan);
+			if (frame >= 0) {
+				if (count == results.length) {
+					results = Arrays.copyOf(results, count * 2);
 				}
-				under = 0;
+				results[count++] = frame;
 			}
-			else {
-				if(distance[i] > tb) {
-					fscan = 0;
-				}
-				else if(ts > distance[i] && fscan != 0) {
-					under++;
-					if(under == tor) {
-						fecan = i;
-						int sum = 0;
-						//Goes from fscan - 1 to pick up frame 3277.
-						for(int j = fscan - 1; j < fecan; j++) {
-							sum += distance[j];
-						}
-						if (sum >= tb) {
-							results.add(fscan + 2 + 1000);
-						}
-						fscan = 0;
+		}
+		return Arrays.copyOf(results, count);
+	}
+
+	//Where findTransitions is between two distances.
+	private static final class Scan {
+		int fscan = 0;		//first distance of the open transition, 0 when none is open
+		int under = 0;		//distances under ts since the last one over it
+
+		Scan copy() {
+			Scan copy = new Scan();
+			copy.fscan = fscan;
+			copy.under = under;
+			return copy;
+		}
+
+		//under only counts while a transition is open.
+		boolean same(Scan other) {
+			return fscan == other.fscan && (fscan == 0 || under == other.under);
+		}
+	}
+
+	/*
+	 * Moves the scan over distance[i]. Returns the frame of the transition
+	 * that ends there and is kept, otherwise -1.
+	 */
+	private int step(double[] distance, double[] tbs, double[] tss, int i, Scan scan) {
+		double tb = tbs == null ? this.tb : tbs[i];
+		double ts = tss == null ? this.ts : tss[i];
+		if(ts <= distance[i] && distance[i] < tb) {
+			if(scan.fscan == 0) {
+				scan.fscan = i;
+			}
+			scan.under = 0;
+		}
+		else {
+			if(distance[i] > tb) {
+				scan.fscan = 0;
+			}
+			else if(ts > distance[i] && scan.fscan != 0) {
+				scan.under++;
+				if(scan.under == tor) {
+					int fscan = scan.fscan;
+					int fecan = i;
+					scan.fscan = 0;
+					int sum = 0;
+					//Goes from fscan - 1 to pick up frame 3277.
+					for(int j = fscan - 1; j < fecan; j++) {
+						sum += distance[j];
+					}
+					if (sum >= (tbs == null ? this.tb : tbs[fscan])) {
+						return fscan + 2 + startFrame;
 					}
 				}
 			}
 		}
-		return results;
+		return -1;
 	}
 
-	public ArrayList<Integer> getFirstFrames() {
-		return firstFrames;
-	}
 	/*
-	 * This method takes a matrix and the index in that matrix where picture features
-	 * start, it then calculates the distance from each picture, and adds the value of the
-	 * picture index to a Hashmap with the distance as the key. It returns a Double Array
-	 * that contains all of the distances.
+	 * The cuts and transitions of distance[from..to - 1], found on the pool as
+	 * if no transition was open at from. stitch then puts right the start of
+	 * the segment when one was: it runs the real scan next to the assumed one
+	 * until they are in the same state, which happens at the latest when the
+	 * open transition ends or a distance goes over tb, and keeps the rest.
 	 */
-	private double[] findDistance(Double[][] matrix) {
-		//Extending results matrix by 1 so that frame counts can
-		//start at 1 instead of 0 when finding first frames.
-		double[] results = new double[matrix.length + 1];
-		int compareImage = 1;
-		int picFeature;
-		double d = 0;
-		while(compareImage < matrix.length) {
-			d = 0;
-			picFeature = 1;
-			while(picFeature < matrix[0].length) {
-				d += Math.abs((matrix[compareImage][picFeature])
-						-(matrix[compareImage - 1][picFeature]));
-				picFeature++;
-			}
-			results[compareImage] = d;
-			compareImage++;
+	private final class Segment extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final double[] distance;
+		private final double[] tbs;
+		private final double[] tss;
+		private final int from;
+		private final int to;
+
+		int[] cuts;
+		int[] transitions;
+		private Scan end;		//state after to - 1, given an empty start
+
+		Segment(double[] distance, double[] tbs, double[] tss, int from, int to) {
+			this.distance = distance;
+			this.tbs = tbs;
+			this.tss = tss;
+			this.from = from;
+			this.to = to;
 		}
-		double mean = calcMean(results);
-		double std = calcStd(results);
 
-		tb = mean + std*11;
-		ts = mean*2;
+		@Override
+		protected void compute() {
+			cuts = findCuts(distance, tbs, from, to);
+			int[] results = new int[16];
+			int count = 0;
+			end = new Scan();
+			for(int i = from; i < to; i++) {
+				int frame = step(distance, tbs, tss, i, end);
+				if (frame >= 0) {
+					if (count == results.length) {
+						results = Arrays.copyOf(results, count * 2);
+					}
+					results[count++] = frame;
+				}
+			}
+			transitions = Arrays.copyOf(results, count);
+		}
 
-		return results;
+		//Fixes the transitions for the real state at from and returns the state after to - 1.
+		Scan stitch(Scan start) {
+			if (start.same(new Scan()))
+				return end;
+			Scan real = start.copy();
+			Scan assumed = new Scan();
+			int[] found = new int[4];
+			int count = 0;
+			int dropped = 0;		//transitions of the assumed scan made before the states met
+			for(int i = from; i < to; i++) {
+				int frame = step(distance, tbs, tss, i, real);
+				if (frame >= 0) {
+					if (count == found.length) {
+						found = Arrays.copyOf(found, count * 2);
+					}
+					found[count++] = frame;
+				}
+				if (step(distance, tbs, tss, i, assumed) >= 0) {
+					dropped++;
+				}
+				if (real.same(assumed)) {
+					int[] fixed = Arrays.copyOf(found, count + transitions.length - dropped);
+					System.arraycopy(transitions, dropped, fixed, count, transitions.length - dropped);
+					transitions = fixed;
+					return end;
+				}
+			}
+			transitions = Arrays.copyOf(found, count);
+			return real;
+		}
 	}
 
-	//Method to find the mean of the given double array
-	//and returns it in a double.
-	private double calcMean(double[] values) {
-		double sum = 0;
-		for(int j = 1; j < values.length - 1; j++) {
-			sum += values[j];
+	//Two sorted arrays as one, keeping repeated frames.
+	static int[] merge(int[] a, int[] b) {
+		int[] frames = new int[a.length + b.length];
+		int i = 0;
+		int j = 0;
+		for(int k = 0; k < frames.length; k++) {
+			if (j == b.length || (i < a.length && a[i] <= b[j])) {
+				frames[k] = a[i++];
+			}
+			else {
+				frames[k] = b[j++];
+			}
 		}
-		return (double) sum/(values.length - 2);
+		return frames;
+	}
+
+	//First frames of the shots after the first one, in ascending order.
+	public int[] getFirstFrames() {
+		return firstFrames;
 	}
 
+	//The distances, kept so the detection can be run again with other thresholds.
+	public AnalysisSession session() {
+		return new AnalysisSession(distance, startFrame, stats.mean, stats.std);
+	}
+
+	//Name of the descriptor the frames are compared with.
+	public String getDescriptor() {
+		return descriptor.name();
+	}
+
+	//Frame number of the first row of the matrix.
+	public int getStartFrame() {
+		return startFrame;
+	}
 
-	//Method to find the standard deviation of the given double array
-	//and returns it in a double.
-	private double calcStd(double[] values) {
-		double deviation = 0;
-		double mean = calcMean(values);
-		for(int i = 1; i < values.length - 1; i++) {
-			deviation += Math.pow(values[i] - mean, 2);
+	//Frame number of the last row of the matrix.
+	public int getLastFrame() {
+		return startFrame + frameMatrix.rows() - 1;
+	}
+	/*
+	 * This method takes a matrix and calculates the distance from each picture
+	 * to the one before it, over the columns of the chosen descriptor. The mean
+	 * and standard deviation behind tb and ts are worked out in the same pass.
+	 * It returns a Double Array that contains all of the distances.
+	 */
+	private double[] findDistance(FeatureMatrix matrix) {
+		//Extending results matrix by 1 so that frame counts can
+		//start at 1 instead of 0 when finding first frames.
+		double[] results = new double[matrix.rows() + 1];
+		DistanceEngine.Stats stats;
+		if (descriptor.isHistogram()) {
+			stats = DistanceEngine.get().consecutive(matrix, descriptorOffset + descriptor.skippedColumns(),
+					descriptorOffset + descriptor.columns(), metric, results);
 		}
-		return (double) Math.sqrt(deviation/(values.length - 3));
+		else {
+			int compareImage = 1;
+			while(compareImage < matrix.rows()) {
+				results[compareImage] = descriptor.distance(matrix, compareImage, compareImage - 1, descriptorOffset);
+				compareImage++;
+			}
+			stats = DistanceEngine.stats(results, 1, results.length - 1);
+		}
+
+		this.stats = stats;
+		tb = stats.mean + stats.std*parameters.cutStd;
+		ts = stats.mean*parameters.transitionMean;
+
+		return results;
 	}
-}
\ No newline at end of file
+}
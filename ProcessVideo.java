@@ -1,9 +1,11 @@
-import java.awt.Color;
 import java.awt.image.BufferedImage;
 import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
 import com.xuggle.xuggler.IContainer;
 import com.xuggle.xuggler.IPacket;
 import com.xuggle.xuggler.IPixelFormat;
@@ -12,75 +14,240 @@ import com.xuggle.xuggler.IStreamCoder;
 import com.xuggle.xuggler.ICodec;
 import com.xuggle.xuggler.IVideoPicture;
 import com.xuggle.xuggler.IVideoResampler;
-import com.xuggle.xuggler.video.ConverterFactory;
-import com.xuggle.xuggler.video.IConverter;
 
 
 /*
- * Uses Xuggler to pull each image form 1000 to 4000, get its intensity,
- * load it into a matrix, and write that matrix to file.
+ * Uses Xuggler to pull each image of the video (or of a range of frames), get
+ * its intensity, load it into a matrix, and write that matrix to file (see
+ * FeatureFile).
  */
 public class ProcessVideo
 {
 
 	int imageCount = 1;
-	double intensityBins [] = new double [26];
-	double intensityMatrix [][] = new double[4000][26];
+	DescriptorSet descriptors = DescriptorSet.INTENSITY;	//what each row is made of
+	int intensityBins [] = new int [IntensityHistogram.BINS];
+	int intensityMatrix [][] = new int[1024][];	//grows with the number of frames
+	int startFrame = 0;					//first frame to process
+	int endFrame = -1;					//frame to stop before, -1 for the end of the video
+	boolean legacyIntensity = false;	//use the old getRGB/Color path (intensity rows only)
+	boolean bgrIntensity = false;		//convert YUV frames to BGR24 instead of reading their Y plane
+	int workers = 1;					//histogram threads, 1 runs on the decoder thread
+	int queueDepth = 16;				//frames the decoder may run ahead of the workers
+	boolean textOutput = false;			//also export the comma separated _frames.txt
+	boolean streamOutput = false;		//segment while decoding instead of storing rows
+	int pixelStride = 1;				//histogram every n-th pixel of every n-th row
+	int scale = 1;						//shrink the frames by this factor while resampling
+	int frameStep = 1;					//histogram every k-th frame, then refine around the boundaries
+	int window = Integer.getInteger("shots.window", 0);	//distances behind the streaming thresholds, 0 for all
+	String outputFile = null;			//features file, filename_frames.bin by default
+	BitSet sampled = new BitSet();		//rows that hold a histogram instead of an interpolation
+	boolean pooling = true;				//reuse pictures and images from a FramePool
+	boolean printStats = false;			//print the frames and allocations when done
+
+	private IContainer container;
+	private IPacket packet;
+	private IStreamCoder videoCoder;
+	private IVideoResampler resampler;
+	private FramePool pool;
+	private int videoStreamId;
+	private FrameIndex frameIndex;		//made on the first seek
+	private boolean atStart = true;		//nothing has been read from the container yet
 	//intensity method 
 
 		public void getIntensity(BufferedImage image, int height, int width){
+			fillBins(image, height, width, row(imageCount - 1));
+		}
 
-			Color color = null;
-			int intensity = 0;
-
-			//All dimensions are placed in the first part of the row.
-			intensityMatrix[imageCount - 1][0] = height * width;
-
-			//Fills proper intensity bins with image attributes.
-			for(int i = 0; i < height; i++) {
-				for(int j = 0; j < width; j++) {
-					color = new Color(image.getRGB(j, i));
-					//Intensity equation
-					intensity = (int) (.299*color.getRed() + .587*color.getGreen()
-							+ 0.114*color.getBlue());
-					if (intensity < 250) {
-						intensityMatrix[imageCount - 1][(int) (intensity/10) + 1]++;
-					}
-					else {
-						intensityMatrix[imageCount - 1][25]++;
-					}
-				}
+		//Number of frames extracted so far.
+		public int getFrameCount() {
+			return imageCount - 1;
+		}
 
+		/*
+		 * Row of the intensity matrix for the given frame index, growing the
+		 * matrix when needed. Rows never move once made, so workers can keep
+		 * filling them while the matrix grows.
+		 */
+		int[] row(int index) {
+			if (index >= intensityMatrix.length) {
+				intensityMatrix = Arrays.copyOf(intensityMatrix, Math.max(index + 1, intensityMatrix.length * 2));
+			}
+			if (intensityMatrix[index] == null) {
+				intensityMatrix[index] = new int[descriptors.columns()];
+			}
+			return intensityMatrix[index];
+		}
+	
+		/*
+		 * Fills proper intensity bins with image attributes. The pixel count
+		 * is placed in the first part of the row. Only touches the given bins,
+		 * so workers can call it at the same time. Rows with other descriptors
+		 * are filled by the DescriptorSet in one pass over the pixels.
+		 */
+		void fillBins(BufferedImage image, int height, int width, int[] bins) {
+			if (!descriptors.isIntensityOnly()) {
+				descriptors.compute(image, pixelStride, bins);
+			}
+			else if (legacyIntensity) {
+				IntensityHistogram.legacyHistogram(image, height, width, bins);
+			}
+			else {
+				IntensityHistogram.histogram(image, height, width, pixelStride, bins);
+			}
+		}
+
+		//Same for the Y plane of a YUV frame, which only intensity rows can use.
+		void fillBins(LumaPlane luma, int[] bins) {
+			luma.histogram(pixelStride, bins);
+		}
+
+		/*
+		 * Fills the rows that were skipped by the frame step, going in a straight
+		 * line from the histogram before them to the one after them.
+		 */
+		void fillGaps() {
+			int rows = imageCount - 1;
+			for(int i = sampled.nextClearBit(0); i < rows; i = sampled.nextClearBit(i + 1)) {
+				int before = sampled.previousSetBit(i);
+				int after = sampled.nextSetBit(i);
+				int[] row = row(i);
+				if (after < 0 || after >= rows) {
+					System.arraycopy(row(before), 0, row, 0, row.length);
+					continue;
+				}
+				int[] first = row(before);
+				int[] last = row(after);
+				for(int j = 0; j < row.length; j++) {
+					row[j] = first[j] + (int) ((long) (last[j] - first[j]) * (i - before) / (after - before));
+				}
 			}
 		}
 	
 	/**
-	 * Takes a media container (file) as the first argument, opens it,
-	 * plays audio as quickly as it can, and opens up a Swing window and displays
-	 * video frames with <i>roughly</i> the right timing.
+	 * Takes a media container (file) as the last argument, pulls the intensity
+	 * of each frame and writes the matrix next to the file.
+	 *
+	 * Options:
+	 *   -start n     first frame to process (default 0)
+	 *   -end n       frame to stop before (default the end of the video)
+	 *   -legacy      use the getRGB/Color histogram, for verification
+	 *   -bgr         convert YUV frames to BGR24 instead of reading the Y plane
+	 *   -workers n   histogram frames on n threads while the main thread decodes
+	 *   -queue n     how many decoded frames may wait for a worker
+	 *   -text        also export the comma separated _frames.txt
+	 *   -stream      print the shot boundaries while decoding instead of writing
+	 *                the matrix (histograms run on the decoder thread)
+	 *   -window n    with -stream, take tb and ts from the last n distances
+	 *                only instead of all of them (default the shots.window
+	 *                property); at least the 25 the detector warms up on
+	 *   -stride n    histogram every n-th pixel of every n-th row
+	 *   -descriptors list
+	 *                comma separated FrameDescriptors to put in each row, from
+	 *                intensity, hsv, grid and ecr (default intensity); the first
+	 *                one is used for -stream and -every
+	 *   -scale n     shrink the frames n times while converting them to BGR24
+	 *   -every k     histogram every k-th frame only, then decode again at the full
+	 *                rate around the likely shot boundaries (not with -stream)
+	 *   -out file    write the features to file instead of filename_frames.bin
+	 *   -nopool      make new pictures and images for every frame, to compare
+	 *   -stats       print the pictures, images and heap bytes allocated
 	 *  
-	 * @param args Must contain one string which represents a filename
+	 * @param args Options followed by one string which represents a filename
 	 */
-	@SuppressWarnings("deprecation")
 	public static void main(String[] args)
 	{
 		ProcessVideo pv = new ProcessVideo();
-		File video;
-		String filename;
-		if (args.length <= 0) {
-			video = new File("20020924_juve_dk_02a.avi");
-			filename = video.getAbsolutePath();
+		String filename = pv.parseArgs(args);
+		pv.extract(filename);
+		if (!pv.streamOutput) {
+			pv.writeIntensity(filename);
+		}
+	}
+
+	/*
+	 * Reads the options into this object and returns the filename, falling back
+	 * to the assignment video when none is given.
+	 */
+	String parseArgs(String[] args) {
+		String filename = null;
+		for(int i = 0; i < args.length; i++) {
+			if (args[i].equals("-legacy")) {
+				legacyIntensity = true;
+			}
+			else if (args[i].equals("-bgr")) {
+				bgrIntensity = true;
+			}
+			else if (args[i].equals("-nopool")) {
+				pooling = false;
+			}
+			else if (args[i].equals("-stats")) {
+				printStats = true;
+			}
+			else if (args[i].equals("-text")) {
+				textOutput = true;
+			}
+			else if (args[i].equals("-stream")) {
+				streamOutput = true;
+			}
+			else if (args[i].equals("-start") && i + 1 < args.length) {
+				startFrame = Integer.parseInt(args[++i]);
+			}
+			else if (args[i].equals("-end") && i + 1 < args.length) {
+				endFrame = Integer.parseInt(args[++i]);
+			}
+			else if (args[i].equals("-workers") && i + 1 < args.length) {
+				workers = Integer.parseInt(args[++i]);
+			}
+			else if (args[i].equals("-queue") && i + 1 < args.length) {
+				queueDepth = Integer.parseInt(args[++i]);
+			}
+			else if (args[i].equals("-stride") && i + 1 < args.length) {
+				pixelStride = Math.max(1, Integer.parseInt(args[++i]));
+			}
+			else if (args[i].equals("-scale") && i + 1 < args.length) {
+				scale = Math.max(1, Integer.parseInt(args[++i]));
+			}
+			else if (args[i].equals("-every") && i + 1 < args.length) {
+				frameStep = Math.max(1, Integer.parseInt(args[++i]));
+			}
+			else if (args[i].equals("-window") && i + 1 < args.length) {
+				window = Math.max(0, Integer.parseInt(args[++i]));
+			}
+			else if (args[i].equals("-descriptors") && i + 1 < args.length) {
+				descriptors = DescriptorSet.parse(args[++i]);
+			}
+			else if (args[i].equals("-out") && i + 1 < args.length) {
+				outputFile = args[++i];
+			}
+			else {
+				filename = args[i];
+			}
 		}
-		else {
-			filename = args[0];
+		if (filename == null) {
+			File video = new File("20020924_juve_dk_02a.avi");
+			filename = video.getAbsolutePath();
 		}
+		return filename;
+	}
 
+	/*
+	 * Decodes the frames of the video and fills the intensity matrix. With more
+	 * than one worker the histograms are built by a FeaturePipeline while this
+	 * thread keeps decoding. With a frame step only every k-th frame is
+	 * histogrammed at first; the stretches around the likely boundaries are
+	 * then decoded again at the full rate and the rest is interpolated.
+	 */
+	@SuppressWarnings("deprecation")
+	public void extract(String filename)
+	{
 		// Let's make sure that we can actually convert video pixel formats.
 		if (!IVideoResampler.isSupported(IVideoResampler.Feature.FEATURE_COLORSPACECONVERSION))
 			throw new RuntimeException("you must install the GPL version of Xuggler (with IVideoResampler support) for this demo to work");
 
 		// Create a Xuggler container object
-		IContainer container = IContainer.make();
+		container = IContainer.make();
+		atStart = true;
 
 		// Open up the container
 		if (container.open(filename, IContainer.Type.READ, null) < 0)
@@ -90,8 +257,8 @@ public class ProcessVideo
 		int numStreams = container.getNumStreams();
 
 		// and iterate through the streams to find the video stream
-		int videoStreamId = -1;
-		IStreamCoder videoCoder = null;
+		videoStreamId = -1;
+		videoCoder = null;
 		for(int i = 0; i < numStreams; i++)
 		{
 			// Find the stream object
@@ -112,18 +279,19 @@ public class ProcessVideo
 		 * Check if we have a video stream in this file.  If so let's open up our decoder so it can
 		 * do work.
 		 */
-		IVideoResampler resampler = null;
+		resampler = null;
 		if (videoCoder != null)
 		{
 			if(videoCoder.open() < 0)
 				throw new RuntimeException("could not open audio decoder for container: "+filename);
 
-			if (videoCoder.getPixelType() != IPixelFormat.Type.BGR24)
+			if (videoCoder.getPixelType() != IPixelFormat.Type.BGR24 || scale > 1)
 			{
 				// if this stream is not in BGR24, we're going to need to
-				// convert it.  The VideoResampler does that for us.
-				resampler = IVideoResampler.make(videoCoder.getWidth(), videoCoder.getHeight(), IPixelFormat.Type.BGR24,
-						videoCoder.getWidth(), videoCoder.getHeight(), videoCoder.getPixelType());
+				// convert it.  The VideoResampler does that for us, and can
+				// shrink the frames on the way.
+				resampler = IVideoResampler.make(videoCoder.getWidth() / scale, videoCoder.getHeight() / scale,
+						IPixelFormat.Type.BGR24, videoCoder.getWidth(), videoCoder.getHeight(), videoCoder.getPixelType());
 				if (resampler == null)
 					throw new RuntimeException("could not create color space resampler for: " + filename);
 			}
@@ -133,13 +301,113 @@ public class ProcessVideo
 		/*
 		 * Now, we start walking through the container looking at each packet.
 		 */
-		IPacket packet = IPacket.make();
-		int count = 0;
+		packet = IPacket.make();
+		//Enough frames for every one that can be queued or in a worker, plus the one being decoded.
+		int poolSize = workers > 1 && !streamOutput ? queueDepth + workers + 1 : 2;
+		pool = new FramePool(videoCoder, resampler, pooling ? poolSize : 0, filename);
+		intensityBins = new int[descriptors.columns()];
+		AllocationCounter allocations = new AllocationCounter();
+		FeaturePipeline pipeline = null;
+		StreamingShotDetector detector = null;
+		if (streamOutput) {
+			detector = new StreamingShotDetector(startFrame, new StreamingShotDetector.Listener() {
+				@Override
+				public void cut(int frame) {
+					System.out.println("Cut at frame " + frame);
+				}
 
-		container.seekKeyFrame(0, 999, 1000, 1001, IContainer.SEEK_FLAG_FRAME);
-		while(count < 4000)
+				@Override
+				public void transition(int frame) {
+					System.out.println("Transition at frame " + frame);
+				}
+			});
+			detector.setDescriptor(descriptors.get(0), descriptors.offset(0));
+			detector.setWindow(window);
+		}
+		else if (workers > 1) {
+			pipeline = new FeaturePipeline(this, workers, queueDepth);
+		}
+
+		int step = detector == null ? frameStep : 1;
+		decode(filename, startFrame, endFrame, step, startFrame > 0, detector, pipeline);
+		if (pipeline != null)
 		{
-			container.readNextPacket(packet);
+			pipeline.finish();
+		}
+
+		if (step > 1)
+		{
+			List<int[]> windows = SparseSampling.candidateWindows(intensityMatrix, imageCount - 1, step,
+					descriptors.get(0), descriptors.offset(0));
+			pipeline = workers > 1 ? new FeaturePipeline(this, workers, queueDepth) : null;
+			for(int[] window: windows) {
+				if (!decode(filename, startFrame + window[0], startFrame + window[1], 1, true, null, pipeline)) {
+					System.out.println("Could not seek to frame " + (startFrame + window[0]) + ", frames up to "
+							+ (startFrame + window[1]) + " are interpolated");
+				}
+			}
+			if (pipeline != null)
+			{
+				pipeline.finish();
+			}
+			fillGaps();
+		}
+
+		if (printStats)
+		{
+			long kilobytes = allocations.getBytes() / 1024;
+			System.out.println(getFrameCount() + " frames, " + pool.getPicturesMade() + " pictures and "
+					+ pool.getImagesMade() + " images made");
+			System.out.println(kilobytes + " KB allocated by the decoder thread, "
+					+ kilobytes / Math.max(1, getFrameCount()) + " KB per frame");
+		}
+
+		if (videoCoder != null)
+		{
+			videoCoder.close();
+			videoCoder = null;
+		}
+		if (container !=null)
+		{
+			container.close();
+			container = null;
+		}
+	}
+
+	/*
+	 * Decodes the frames from..to (to < 0 for the end of the video) and
+	 * histograms every step-th one into its row, skipping rows that already
+	 * hold a histogram. Frames past the last row add new rows.
+	 *
+	 * With seek the container is taken to the keyframe before from through
+	 * the FrameIndex, and the pictures before from's timestamp are dropped,
+	 * so the first row filled really is from. When the seek fails at the
+	 * start of the video the frames before from are decoded and dropped
+	 * instead; later on nothing is decoded and false is returned.
+	 */
+	private boolean decode(String filename, int from, int to, int step, boolean seek,
+			StreamingShotDetector detector, FeaturePipeline pipeline)
+	{
+		int count = from;
+		long until = -1;			//timestamp of frame from after a seek
+		if (seek)
+		{
+			FrameIndex index = frameIndex(filename);
+			if (index != null && from < index.size())
+				until = index.seek(container, videoStreamId, from);
+			if (until < 0)
+			{
+				if (!atStart)
+					return false;
+				count = 0;
+			}
+		}
+		atStart = false;
+		while(to < 0 || count < to)
+		{
+			//Stop at the end of the video.
+			if (container.readNextPacket(packet) < 0)
+				break;
 			//    	System.out.println(packet.getPosition());
 			/*
 			 * Now we have a packet, let's see if it belongs to our video stream
@@ -147,10 +415,10 @@ public class ProcessVideo
 			if (packet.getStreamIndex() == videoStreamId)
 			{
 				/*
-				 * We allocate a new picture to get the data out of Xuggler
+				 * We take a picture from the pool to get the data out of Xuggler
 				 */
-				IVideoPicture picture = IVideoPicture.make(videoCoder.getPixelType(),
-						videoCoder.getWidth(), videoCoder.getHeight());
+				FramePool.Frame frame = pool.acquire();
+				IVideoPicture picture = frame.picture;
 
 				/*
 				 * Now, we decode the video, checking for any errors.
@@ -165,51 +433,118 @@ public class ProcessVideo
 				 * a full video picture yet.  Therefore you should always check if you
 				 * got a complete picture from the decoder
 				 */
-				if (picture.isComplete())
+				if (!picture.isComplete())
+				{
+					frame.release();
+				}
+				//Pictures from the keyframe up to the one the seek was for.
+				else if (until >= 0 && picture.getTimeStamp() < until)
 				{
-					IVideoPicture newPic = picture;
-					/*
-					 * If the resampler is not null, that means we didn't get the video in BGR24 format and
-					 * need to convert it into BGR24 format.
-					 */
-					if (resampler != null)
+					frame.release();
+				}
+				//Frames before from, when the seek did not work.
+				else if (count < from)
+				{
+					frame.release();
+					count++;
+				}
+				else
+				{
+					until = -1;
+					int index = count - startFrame;
+					//Frames between the samples are decoded but never converted.
+					boolean wanted = index % step == 0 && !sampled.get(index);
+					//YUV frames are binned straight from their Y plane.
+					LumaPlane luma = null;
+					if (wanted && !legacyIntensity && !bgrIntensity && scale == 1 && descriptors.isIntensityOnly())
+						luma = LumaPlane.of(picture);
+					if (luma != null)
 					{
-						// we must resample
-						newPic = IVideoPicture.make(resampler.getOutputPixelFormat(), picture.getWidth(), picture.getHeight());
-						if (resampler.resample(newPic, picture) < 0)
-							throw new RuntimeException("could not resample video from: " + filename);
+						if (detector != null) {
+							fillBins(luma, intensityBins);
+							detector.addRow(intensityBins);
+							frame.release();
+						}
+						else if (pipeline != null) {
+							pipeline.submit(luma, row(index), frame);
+						}
+						else {
+							fillBins(luma, row(index));
+							frame.release();
+						}
+						if (detector == null) {
+							sampled.set(index);
+						}
+					}
+					else if (wanted)
+					{
+						/*
+						 * The frame resamples the picture to BGR24 when the video is in
+						 * another format, and copies it into its image.
+						 */
+						BufferedImage img = frame.toImage();
+						if (detector != null) {
+							fillBins(img, img.getHeight(), img.getWidth(), intensityBins);
+							detector.addRow(intensityBins);
+							frame.release();
+						}
+						else if (pipeline != null) {
+							pipeline.submit(img, row(index), frame);
+						}
+						else {
+							fillBins(img, img.getHeight(), img.getWidth(), row(index));
+							frame.release();
+						}
+						if (detector == null) {
+							sampled.set(index);
+						}
+					}
+					else
+					{
+						frame.release();
 					}
-					if (newPic.getPixelType() != IPixelFormat.Type.BGR24)
-						throw new RuntimeException("could not decode video as BGR 24 bit data in: " + filename);
-
 
-					BufferedImage img = new BufferedImage(newPic.getWidth(), newPic.getHeight(), BufferedImage.TYPE_3BYTE_BGR);
-					IConverter converter = ConverterFactory.createConverter(ConverterFactory.XUGGLER_BGR_24, newPic);
-					img = converter.toImage(newPic);
-					pv.getIntensity(img, img.getHeight(), img.getWidth());
-					
-					pv.imageCount++;
+					if (index == imageCount - 1) {
+						imageCount++;
+					}
 					count++;
 				}
 			}
 		}
-		if (videoCoder != null)
-		{
-			videoCoder.close();
-			videoCoder = null;
-		}
-		if (container !=null)
+		return true;
+	}
+
+	//The video's FrameIndex, loaded or built the first time a seek needs it.
+	private FrameIndex frameIndex(String filename)
+	{
+		if (frameIndex == null)
 		{
-			container.close();
-			container = null;
+			frameIndex = FrameIndex.forVideo(filename);
 		}
-		
-		pv.writeIntensity(filename);
+		return frameIndex;
 	}
 
 
-	//This method writes the contents of the intensity matrix to a file called intensity.txt
+	/*
+	 * Writes the intensity matrix to filename_frames.bin (or the -out file), and also to the comma
+	 * separated filename_frames.txt when text output was asked for.
+	 */
 	public void writeIntensity(String filename){
+		try {
+			File file = outputFile != null ? new File(outputFile) : new File(filename + FeatureFile.EXTENSION);
+			FeatureFile.write(file, intensityMatrix,
+					imageCount - 1, startFrame, descriptors);
+		}
+		catch (IOException e) {
+			System.out.println("File could not be created.");
+		}
+		if (textOutput) {
+			writeIntensityText(filename);
+		}
+	}
+
+	//This method writes the contents of the intensity matrix to a file called intensity.txt
+	public void writeIntensityText(String filename){
 		/////////////////////
 		///your code///
 		/////////////////
@@ -228,9 +563,9 @@ public class ProcessVideo
 			//Goes through the intensityMatrix and divides each attribute with a comma
 			//Also ensures no comma before the first value or after the last value.
 			String comma = "";
-			for(double[] i: intensityMatrix) {
-				for(double j: i) {
-					writer.write(comma + String.valueOf((int) j));
+			for(int i = 0; i < imageCount - 1; i++) {
+				for(int j: intensityMatrix[i]) {
+					writer.write(comma + String.valueOf(j));
 					comma = ",";
 				}
 			}
@@ -0,0 +1,112 @@
+/*
+ * Mean and sample standard deviation of the last window values added. Each
+ * value is folded in with Welford's update, and the one that drops out of the
+ * window is taken out by running the update backwards, so a new value costs
+ * the same however long the window is. Once per trip round the window the
+ * sums are worked out again from the values held, so rounding errors from
+ * taking values out cannot build up over a long video.
+ *
+ * A window of 0 keeps every value, like the running statistics of
+ * StreamingShotDetector always did.
+ */
+public class RollingStats {
+
+	private final double[] values;		//the window, oldest at next once full
+	private int next = 0;
+	private int count = 0;
+	private double mean = 0;
+	private double m2 = 0;				//sum of squared differences from the mean
+
+	public RollingStats(int window) {
+		values = new double[Math.max(0, window)];
+	}
+
+	//Adds a value, dropping the oldest one when the window is full.
+	public void add(double value) {
+		if (values.length == 0) {
+			count++;
+			fold(value);
+			return;
+		}
+		if (count == values.length) {
+			take(values[next]);
+		}
+		values[next] = value;
+		count++;
+		fold(value);
+		next++;
+		if (next == values.length) {
+			next = 0;
+			if (count == values.length) {
+				resum();
+			}
+		}
+	}
+
+	//Drops the oldest value without adding one, for the end of a centred window.
+	public void removeOldest() {
+		if (count == 0 || values.length == 0)
+			return;
+		int oldest = next - count;
+		if (oldest < 0) {
+			oldest += values.length;
+		}
+		take(values[oldest]);
+	}
+
+	private void take(double value) {
+		count--;
+		if (count == 0) {
+			mean = 0;
+			m2 = 0;
+			return;
+		}
+		double delta = value - mean;
+		mean -= delta/count;
+		m2 = Math.max(0, m2 - delta*(value - mean));
+	}
+
+	private void fold(double value) {
+		double delta = value - mean;
+		mean += delta/count;
+		m2 += delta*(value - mean);
+	}
+
+	//Works the mean and m2 out again from the values in the window.
+	private void resum() {
+		double sum = 0;
+		for(double value: values) {
+			sum += value;
+		}
+		mean = sum/values.length;
+		double squares = 0;
+		for(double value: values) {
+			squares += (value - mean)*(value - mean);
+		}
+		m2 = squares;
+	}
+
+	public int count() {
+		return count;
+	}
+
+	public double mean() {
+		return mean;
+	}
+
+	public double std() {
+		return Math.sqrt(m2/(count - 1));
+	}
+
+	//Mean of the window without one of the values in it.
+	public double meanWithout(double value) {
+		return mean - (value - mean)/(count - 1);
+	}
+
+	//Standard deviation of the window without one of the values in it.
+	public double stdWithout(double value) {
+		double without = meanWithout(value);
+		double rest = Math.max(0, m2 - (value - mean)*(value - without));
+		return Math.sqrt(rest/(count - 2));
+	}
+}
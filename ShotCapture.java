@@ -0,0 +1,154 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import com.xuggle.xuggler.ICodec;
+import com.xuggle.xuggler.IContainer;
+import com.xuggle.xuggler.IPacket;
+import com.xuggle.xuggler.IPixelFormat;
+import com.xuggle.xuggler.IStreamCoder;
+import com.xuggle.xuggler.IVideoPicture;
+import com.xuggle.xuggler.IVideoResampler;
+
+/*
+ * Grabs the images of the first frame of each shot. Instead of decoding the
+ * whole window and checking every frame against the list, it walks the
+ * sorted frame numbers with a cursor: when the next one is close it decodes
+ * forward to it, otherwise it seeks to it through the FrameIndex the same
+ * way the player seeks to the start of a shot. Only the frames that are kept get converted
+ * to BGR24, and the decode and resample pictures are reused from one to the
+ * next.
+ */
+public class ShotCapture {
+
+	//Frames further ahead than this are reached by seeking instead of decoding.
+	static final int SEEK_GAP = 100;
+
+	private ShotCapture() {
+	}
+
+	/*
+	 * Opens the video on its own, captures the frames and closes it again.
+	 * Used where no player is running, like the batch segmenter.
+	 */
+	@SuppressWarnings("deprecation")
+	public static ArrayList<VideoFrame> capture(List<Integer> frameNums, String filename) {
+		// Create a Xuggler container object
+		IContainer container = IContainer.make();
+
+		// Open up the container
+		if (container.open(filename, IContainer.Type.READ, null) < 0)
+			throw new IllegalArgumentException("could not open file: " + filename);
+
+		// and iterate through the streams to find the video stream
+		int videoStreamId = -1;
+		IStreamCoder videoCoder = null;
+		boolean opened = false;
+		try {
+			for(int i = 0; i < container.getNumStreams(); i++)
+			{
+				IStreamCoder coder = container.getStream(i).getStreamCoder();
+				if (videoStreamId == -1 && coder.getCodecType() == ICodec.Type.CODEC_TYPE_VIDEO)
+				{
+					videoStreamId = i;
+					videoCoder = coder;
+				}
+			}
+			if (videoStreamId == -1)
+				throw new RuntimeException("could not find video stream in container: "+filename);
+
+			if(videoCoder.open() < 0)
+				throw new RuntimeException("could not open video decoder for container: "+filename);
+			opened = true;
+
+			IVideoResampler resampler = null;
+			if (videoCoder.getPixelType() != IPixelFormat.Type.BGR24)
+			{
+				// if this stream is not in BGR24, we're going to need to
+				// convert it.  The VideoResampler does that for us.
+				resampler = IVideoResampler.make(videoCoder.getWidth(), videoCoder.getHeight(), IPixelFormat.Type.BGR24,
+						videoCoder.getWidth(), videoCoder.getHeight(), videoCoder.getPixelType());
+				if (resampler == null)
+					throw new RuntimeException("could not create color space resampler for: " + filename);
+			}
+
+			return capture(frameNums, container, IPacket.make(), videoCoder, resampler, videoStreamId, filename);
+		}
+		finally {
+			//A file that fails any of the checks above is still closed, so a batch run does not leak it.
+			if (opened) {
+				videoCoder.close();
+			}
+			container.close();
+		}
+	}
+
+	/*
+	 * Captures the frames from a container that is still at the start of the
+	 * video. Seeks go through the video's FrameIndex, and the pictures before
+	 * the target's timestamp are decoded and dropped, since the seek lands on
+	 * the keyframe before it. Without an index, or when a seek fails, the
+	 * frames are decoded one after another and counted instead.
+	 */
+	public static ArrayList<VideoFrame> capture(List<Integer> frameNums, IContainer container, IPacket packet,
+			IStreamCoder videoCoder, IVideoResampler resampler, int videoStreamId, String filename) {
+		ArrayList<Integer> targets = new ArrayList<Integer>(frameNums);
+		Collections.sort(targets);
+		ArrayList<VideoFrame> result = new ArrayList<VideoFrame>(targets.size());
+
+		FrameIndex index = FrameIndex.forVideo(filename);
+		FramePool pool = new FramePool(videoCoder, resampler, 1, filename);
+		int cursor = 0;
+		int position = 0;			//frame number of the next decoded picture
+		long until = -1;			//after a seek, the timestamp of the frame it was for
+		while(cursor < targets.size())
+		{
+			int target = targets.get(cursor);
+			if (until < 0 && index != null && target < index.size() && target - position > SEEK_GAP) {
+				long timeStamp = index.seek(container, videoStreamId, target);
+				if (timeStamp >= 0) {
+					until = timeStamp;
+					position = target;
+				}
+			}
+			if (container.readNextPacket(packet) < 0)
+				break;
+			if (packet.getStreamIndex() != videoStreamId)
+				continue;
+
+			FramePool.Frame frame = pool.acquire();
+			IVideoPicture picture = frame.picture;
+
+			int bytesDecoded = videoCoder.decodeVideo(picture, packet, 0);
+			if (bytesDecoded < 0)
+				throw new RuntimeException("got error decoding video in: " + filename);
+
+			if (!picture.isComplete()) {
+				frame.release();
+				continue;
+			}
+
+			//Pictures from the keyframe up to the one the seek was for.
+			if (until >= 0) {
+				if (picture.getTimeStamp() < until) {
+					frame.release();
+					continue;
+				}
+				until = -1;
+			}
+
+			if (position == target) {
+				//The image is kept, so it is handed over instead of reused.
+				result.add(new VideoFrame(frame.detachImage(), target, picture.getFormattedTimeStamp()));
+
+				//Skip duplicates of the same frame.
+				while(cursor < targets.size() && targets.get(cursor) == target) {
+					cursor++;
+				}
+			}
+			frame.release();
+			position++;
+		}
+		return result;
+	}
+}
@@ -0,0 +1,128 @@
+import java.awt.GraphicsConfiguration;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.LinkedBlockingDeque;
+
+import javax.swing.AbstractListModel;
+import javax.swing.ImageIcon;
+import javax.swing.SwingUtilities;
+
+/*
+ * List model for the shot strip that only keeps the thumbnails of the shots
+ * on screen and around them. A thumbnail that is not held is asked for when
+ * its cell is painted and made on a background thread, the most recently
+ * asked for first, and the cell is repainted once it is there. At most
+ * thumbnails.cached thumbnails (120 by default) are held, the least recently
+ * shown going first, so memory stays the same however many shots there are.
+ * The frames themselves hold no images when they come from a ShotStore.
+ */
+@SuppressWarnings("serial")
+public class ShotListModel extends AbstractListModel<VideoFrame> {
+
+	static final int DEFAULT_CACHED = 120;
+
+	private final List<VideoFrame> frames;
+	private final GraphicsConfiguration config;
+	private final int size;			//width and height of a thumbnail
+	private final int capacity;
+
+	//Guarded by this.
+	private final LinkedHashMap<Integer, ImageIcon> thumbnails;
+	private final Set<Integer> requested = new HashSet<Integer>();
+	private final LinkedBlockingDeque<Integer> pending = new LinkedBlockingDeque<Integer>();
+	private long loaded = 0;
+
+	public ShotListModel(List<VideoFrame> frames, GraphicsConfiguration config, int size) {
+		this(frames, config, size, Integer.getInteger("thumbnails.cached", DEFAULT_CACHED));
+	}
+
+	ShotListModel(List<VideoFrame> frames, GraphicsConfiguration config, int size, int capacity) {
+		this.frames = frames;
+		this.config = config;
+		this.size = size;
+		this.capacity = capacity;
+		thumbnails = new LinkedHashMap<Integer, ImageIcon>(capacity * 4 / 3 + 1, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Integer, ImageIcon> eldest) {
+				return size() > ShotListModel.this.capacity;
+			}
+		};
+		Thread thread = new Thread(this::run, "thumbnails");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	@Override
+	public int getSize() {
+		return frames.size();
+	}
+
+	@Override
+	public VideoFrame getElementAt(int index) {
+		return frames.get(index);
+	}
+
+	/*
+	 * The thumbnail of the shot, or null while it is being made. Asking for
+	 * one that is not held queues it.
+	 */
+	public synchronized ImageIcon getThumbnail(int index) {
+		if (index < 0 || index >= frames.size())
+			return null;
+		ImageIcon icon = thumbnails.get(index);
+		if (icon == null) {
+			request(index);
+		}
+		return icon;
+	}
+
+	//Queues the thumbnails of the given shots that are not held, for shots about to be scrolled to.
+	public synchronized void prefetch(int from, int to) {
+		for(int i = Math.max(0, from); i <= to && i < frames.size(); i++) {
+			if (!thumbnails.containsKey(i)) {
+				request(i);
+			}
+		}
+	}
+
+	//Puts the shot at the front of the queue. Requests that fall off the back are forgotten.
+	private void request(int index) {
+		if (requested.add(index) || pending.remove(index)) {
+			pending.addFirst(index);
+		}
+		while(pending.size() > capacity) {
+			Integer oldest = pending.pollLast();
+			if (oldest != null) {
+				requested.remove(oldest);
+			}
+		}
+	}
+
+	private void run() {
+		try {
+			while(true) {
+				int index = pending.takeFirst();
+				ImageIcon icon = frames.get(index).makeThumbnail(config, size, size);
+				synchronized(this) {
+					requested.remove(index);
+					if (icon != null) {
+						thumbnails.put(index, icon);
+						loaded++;
+					}
+				}
+				SwingUtilities.invokeLater(() -> fireContentsChanged(this, index, index));
+			}
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	@Override
+	public synchronized String toString() {
+		return thumbnails.size() + " of " + frames.size() + " thumbnails held, " + loaded + " made";
+	}
+}
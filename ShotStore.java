@@ -0,0 +1,197 @@
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+/*
+ * Keeps the first frame of every shot next to the features, so the browsing
+ * GUI does not have to decode the video again to show them. Little-endian,
+ * like FeatureFile:
+ *
+ *   int magic        'SHOT'
+ *   int version      1
+ *   int count
+ *   count * { int frameNum, long offset, int length }
+ *   count * { int timestampLength, byte[] timestamp (UTF-8), byte[] jpeg }
+ *
+ * The index at the front lets a single shot be read without touching the rest.
+ */
+public class ShotStore {
+
+	public static final String EXTENSION = "_shots.bin";
+
+	static final int MAGIC = 0x53484F54;
+	static final int VERSION = 1;
+	static final int HEADER_BYTES = 3 * 4;
+	static final int ENTRY_BYTES = 4 + 8 + 4;
+
+	private final MappedByteBuffer map;
+	private final int count;
+
+	private ShotStore(MappedByteBuffer map, int count) {
+		this.map = map;
+		this.count = count;
+	}
+
+	public int size() {
+		return count;
+	}
+
+	public int getFrameNum(int shot) {
+		return map.getInt(HEADER_BYTES + shot * ENTRY_BYTES);
+	}
+
+	public String getTimestamp(int shot) {
+		int offset = (int) map.getLong(HEADER_BYTES + shot * ENTRY_BYTES + 4);
+		byte[] text = new byte[map.getInt(offset)];
+		map.get(offset + 4, text);
+		return new String(text, StandardCharsets.UTF_8);
+	}
+
+	//Decodes the image of one shot.
+	public BufferedImage readImage(int shot) throws IOException {
+		return ImageIO.read(new ByteArrayInputStream(jpeg(shot)));
+	}
+
+	/*
+	 * Decodes the image of one shot at no less than the given size, skipping
+	 * whole rows and columns of the JPEG where it is much larger.
+	 */
+	public BufferedImage readThumbnail(int shot, int width, int height) throws IOException {
+		try (ImageInputStream in = ImageIO.createImageInputStream(new ByteArrayInputStream(jpeg(shot)))) {
+			Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+			if (!readers.hasNext())
+				throw new IOException("no JPEG reader available");
+			ImageReader reader = readers.next();
+			try {
+				reader.setInput(in, true, true);
+				int step = Math.max(1, Math.min(reader.getWidth(0) / width, reader.getHeight(0) / height));
+				ImageReadParam param = reader.getDefaultReadParam();
+				param.setSourceSubsampling(step, step, 0, 0);
+				return reader.read(0, param);
+			}
+			finally {
+				reader.dispose();
+			}
+		}
+	}
+
+	private byte[] jpeg(int shot) {
+		int entry = HEADER_BYTES + shot * ENTRY_BYTES;
+		int offset = (int) map.getLong(entry + 4);
+		int length = map.getInt(entry + 12);
+		int textLength = map.getInt(offset);
+		byte[] jpeg = new byte[length - 4 - textLength];
+		map.get(offset + 4 + textLength, jpeg);
+		return jpeg;
+	}
+
+	//Every shot as a VideoFrame whose image is read from the store when it is needed.
+	public ArrayList<VideoFrame> frames() {
+		ArrayList<VideoFrame> result = new ArrayList<VideoFrame>(count);
+		for(int i = 0; i < count; i++) {
+			result.add(new VideoFrame(this, i));
+		}
+		return result;
+	}
+
+	//True if the store holds exactly the given frames, in order.
+	public boolean matches(List<Integer> frameNums) {
+		if (frameNums.size() != count)
+			return false;
+		for(int i = 0; i < count; i++) {
+			if (frameNums.get(i) != getFrameNum(i))
+				return false;
+		}
+		return true;
+	}
+
+	public static ShotStore open(File file) throws IOException {
+		try (RandomAccessFile in = new RandomAccessFile(file, "r");
+				FileChannel channel = in.getChannel()) {
+			MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			map.order(ByteOrder.LITTLE_ENDIAN);
+			if (map.limit() < HEADER_BYTES || map.getInt(0) != MAGIC)
+				throw new IOException(file + " is not a shot file");
+			if (map.getInt(4) != VERSION)
+				throw new IOException(file + " has unsupported version " + map.getInt(4));
+			int count = map.getInt(8);
+			if (HEADER_BYTES + (long) count * ENTRY_BYTES > map.limit())
+				throw new IOException(file + " is truncated");
+			return new ShotStore(map, count);
+		}
+	}
+
+	/*
+	 * Opens the store for a video if it is there and still holds exactly the
+	 * given frames, otherwise returns null.
+	 */
+	public static ShotStore openIfCurrent(File file, List<Integer> frameNums) {
+		if (!file.exists())
+			return null;
+		try {
+			ShotStore store = open(file);
+			return store.matches(frameNums) ? store : null;
+		}
+		catch (IOException e) {
+			return null;
+		}
+	}
+
+	//Writes the frames, encoding each image as a JPEG.
+	public static void write(File file, List<VideoFrame> frames) throws IOException {
+		List<byte[]> blobs = new ArrayList<byte[]>(frames.size());
+		for(VideoFrame frame: frames) {
+			blobs.add(encode(frame));
+		}
+		ByteBuffer index = ByteBuffer.allocate(HEADER_BYTES + frames.size() * ENTRY_BYTES)
+				.order(ByteOrder.LITTLE_ENDIAN);
+		index.putInt(MAGIC).putInt(VERSION).putInt(frames.size());
+		long offset = index.capacity();
+		for(int i = 0; i < frames.size(); i++) {
+			index.putInt(frames.get(i).getFrameNum()).putLong(offset).putInt(blobs.get(i).length);
+			offset += blobs.get(i).length;
+		}
+		index.flip();
+		try (RandomAccessFile out = new RandomAccessFile(file, "rw");
+				FileChannel channel = out.getChannel()) {
+			channel.truncate(0);
+			while(index.hasRemaining()) {
+				channel.write(index);
+			}
+			for(byte[] blob: blobs) {
+				ByteBuffer buffer = ByteBuffer.wrap(blob);
+				while(buffer.hasRemaining()) {
+					channel.write(buffer);
+				}
+			}
+		}
+	}
+
+	//Timestamp and JPEG of one frame, laid out as in the file.
+	private static byte[] encode(VideoFrame frame) throws IOException {
+		byte[] text = frame.getTimestamp().getBytes(StandardCharsets.UTF_8);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ByteBuffer length = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN).putInt(text.length);
+		out.write(length.array());
+		out.write(text);
+		if (!ImageIO.write(frame.getImage(), "jpg", out))
+			throw new IOException("no JPEG writer available");
+		return out.toByteArray();
+	}
+}
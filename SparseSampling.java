@@ -0,0 +1,58 @@
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+ * Picks the stretches of a video that the fast analysis mode of ProcessVideo
+ * (-every k) decodes again at the full rate. The first pass histograms every
+ * k-th frame; wherever the distance between two samples is large enough to
+ * hide a cut or the start of a transition, the frames between them plus k on
+ * either side are refined. Everything else is interpolated between samples.
+ */
+public final class SparseSampling {
+
+	//Sample distances of at least mean*REFINE_MEAN_MULTIPLIER get refined.
+	static final double REFINE_MEAN_MULTIPLIER = ProcessFrames.TRANSITION_MEAN_MULTIPLIER;
+
+	private SparseSampling() {
+	}
+
+	/*
+	 * Returns the row ranges [from, to) to decode again, sorted and merged.
+	 * Rows 0, step, 2*step, ... of the matrix must hold histograms. Samples are
+	 * compared with the descriptor whose columns start at offset, with the
+	 * shots.metric metric like ProcessFrames.
+	 */
+	static List<int[]> candidateWindows(int[][] matrix, int rows, int step, FrameDescriptor descriptor, int offset) {
+		DistanceEngine engine = DistanceEngine.get();
+		DistanceEngine.Metric metric = DistanceEngine.Metric.fromProperties();
+		int samples = (rows + step - 1) / step;
+		double[] distance = new double[samples];
+		double sum = 0;
+		for(int s = 1; s < samples; s++) {
+			int[] previous = matrix[(s - 1) * step];
+			int[] current = matrix[s * step];
+			double d = engine.distance(descriptor, current, previous, offset, metric);
+			distance[s] = d;
+			sum += d;
+		}
+
+		List<int[]> windows = new ArrayList<int[]>();
+		if (samples < 2)
+			return windows;
+		double threshold = sum / (samples - 1) * REFINE_MEAN_MULTIPLIER;
+		for(int s = 1; s < samples; s++) {
+			if (distance[s] < threshold)
+				continue;
+			int from = Math.max(0, (s - 2) * step);
+			int to = Math.min(rows, (s + 1) * step + 1);
+			int[] last = windows.isEmpty() ? null : windows.get(windows.size() - 1);
+			if (last != null && from <= last[1]) {
+				last[1] = Math.max(last[1], to);
+			}
+			else {
+				windows.add(new int[] {from, to});
+			}
+		}
+		return windows;
+	}
+}
@@ -0,0 +1,140 @@
+/*
+ * Single pass version of the twin-comparison in ProcessFrames. Rows are fed
+ * in one at a time as they come off the decoder, and cuts and gradual
+ * transitions are reported to a listener as soon as they can be decided.
+ *
+ * The global mean and standard deviation used for tb and ts are replaced by
+ * running ones (see RollingStats), taken over the distances seen before the
+ * current frame, or only the last window of them when a window is set. Nothing
+ * is reported until warmup distances have been seen. Only the previous row,
+ * the window and a handful of counters are kept, so memory does not grow with
+ * the length of the video.
+ *
+ * A cut is reported on the frame it happens. A transition is reported tor
+ * frames after it ends, or once it has run for maxTransition frames.
+ */
+public class StreamingShotDetector {
+
+	//Receives the boundaries, using the same frame numbers as ProcessFrames.
+	public interface Listener {
+		void cut(int frame);
+		void transition(int frame);
+	}
+
+	private final Listener listener;
+	private final int startFrame;
+	private int warmup = 25;				//distances needed before thresholds are trusted
+	private final AnalysisSession.Parameters parameters = AnalysisSession.Parameters.fromProperties();
+	private int tor = parameters.tor;
+	private int maxTransition = 250;		//longest transition before it is forced to end
+	private int window = Integer.getInteger("shots.window", 0);	//distances behind tb and ts, 0 for all
+	private FrameDescriptor descriptor = DescriptorSet.INTENSITY.get(0);
+	private int offset = 0;					//first column of the descriptor in a row
+	private final DistanceEngine.Metric metric = DistanceEngine.Metric.fromProperties();
+	private final DistanceEngine engine = DistanceEngine.get();
+
+	private int[] previous = null;
+	private int index = 0;					//index of the current distance, as in ProcessFrames
+
+	private RollingStats stats = null;		//statistics of the distances, made with the first one
+
+	//Transition state, as in ProcessFrames.findTransitions.
+	private int fscan = 0;
+	private int under = 0;
+	private long sum = 0;					//sum of the distances from fscan - 1
+	private double lastDistance = 0;
+
+	StreamingShotDetector(int startFrame, Listener listener) {
+		this.startFrame = startFrame;
+		this.listener = listener;
+	}
+
+	public void setWarmup(int warmup) {
+		this.warmup = Math.max(2, warmup);
+	}
+
+	public void setTor(int tor) {
+		this.tor = tor;
+	}
+
+	public void setMaxTransition(int maxTransition) {
+		this.maxTransition = maxTransition;
+	}
+
+	/*
+	 * Keeps tb and ts to the last window distances, or all of them for 0. The
+	 * window holds at least the warmup distances, since nothing is reported
+	 * before that many have been seen.
+	 */
+	public void setWindow(int window) {
+		this.window = Math.max(0, window);
+	}
+
+	//Compares rows with the descriptor whose columns start at offset, intensity by default.
+	public void setDescriptor(FrameDescriptor descriptor, int offset) {
+		this.descriptor = descriptor;
+		this.offset = offset;
+	}
+
+	/*
+	 * Takes the next row of the feature matrix. Rows are compared the same way
+	 * as in ProcessFrames.findDistance. The row is copied, so the caller can
+	 * reuse it.
+	 */
+	public void addRow(int[] row) {
+		if (previous == null) {
+			previous = row.clone();
+			return;
+		}
+		double d = engine.distance(descriptor, row, previous, offset, metric);
+		System.arraycopy(row, 0, previous, 0, row.length);
+		index++;
+		addDistance(d);
+	}
+
+	//Runs the twin-comparison for one distance, then folds it into the statistics.
+	private void addDistance(double d) {
+		if (stats == null) {
+			stats = new RollingStats(window > 0 ? Math.max(window, warmup) : 0);
+		}
+		if (stats.count() >= warmup) {
+			double tb = stats.mean() + stats.std()*parameters.cutStd;
+			double ts = stats.mean()*parameters.transitionMean;
+			if (d >= tb) {
+				//Have to add 1 because Ce is frame i + 1
+				listener.cut(index + 1 + startFrame);
+			}
+			if(ts <= d && d < tb) {
+				if(fscan == 0) {
+					fscan = index;
+					sum = (long) lastDistance;
+				}
+				under = 0;
+			}
+			else if(d > tb) {
+				fscan = 0;
+			}
+			else if(ts > d && fscan != 0) {
+				under++;
+				if(under == tor) {
+					endTransition(tb);
+				}
+			}
+			if (fscan != 0 && index - fscan >= maxTransition) {
+				endTransition(tb);
+			}
+			if (fscan != 0) {
+				sum += (long) d;
+			}
+		}
+		lastDistance = d;
+		stats.add(d);
+	}
+
+	private void endTransition(double tb) {
+		if (sum >= tb) {
+			listener.transition(fscan + 2 + startFrame);
+		}
+		fscan = 0;
+	}
+}
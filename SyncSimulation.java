@@ -0,0 +1,105 @@
+import java.util.ArrayDeque;
+import java.util.Random;
+
+/*
+ * Runs AVSync headless against a simulated clock: a decoder that takes a
+ * random time per frame, with now and then a heavy scene that takes several
+ * frame periods, feeds a ring of frames that a presenter shows on time, each
+ * frame taking a while to paint. Time
+ * moves on a millisecond at a time, so a run is quick and always comes out
+ * the same for the same seed. A clock rate other than 1 stands in for a sound
+ * card running fast or slow against the wall clock.
+ *
+ * Usage: java SyncSimulation [-frames n] [-fps n] [-decodeMillis n] [-heavy p]
+ *                            [-showMillis n] [-clockRate r] [-window ms] [-ring n] [-seed n]
+ */
+public class SyncSimulation {
+
+	public static void main(String[] args) {
+		int frames = 25 * 60 * 5;
+		int fps = 25;
+		int decodeMillis = 20;		//average decode time of a frame
+		double heavy = 0.01;		//chance of a frame taking five times as long
+		int showMillis = 5;			//time to paint a frame
+		double clockRate = 1;
+		long window = AVSync.DEFAULT_WINDOW_MILLIS;
+		int ring = PlaybackEngine.VIDEO_FRAMES;
+		long seed = 1;
+		for(int i = 0; i + 1 < args.length; i += 2) {
+			String value = args[i + 1];
+			switch(args[i]) {
+			case "-frames": frames = Integer.parseInt(value); break;
+			case "-fps": fps = Integer.parseInt(value); break;
+			case "-decodeMillis": decodeMillis = Integer.parseInt(value); break;
+			case "-heavy": heavy = Double.parseDouble(value); break;
+			case "-showMillis": showMillis = Integer.parseInt(value); break;
+			case "-clockRate": clockRate = Double.parseDouble(value); break;
+			case "-window": window = Long.parseLong(value); break;
+			case "-ring": ring = Integer.parseInt(value); break;
+			case "-seed": seed = Long.parseLong(value); break;
+			default:
+				System.out.println("unknown option " + args[i]);
+				return;
+			}
+		}
+
+		AVSync sync = run(frames, fps, decodeMillis, heavy, showMillis, clockRate, window, ring, new Random(seed));
+		System.out.println(frames + " frames at " + fps + " fps, " + decodeMillis + " ms per decode, "
+				+ heavy + " heavy, " + showMillis + " ms per paint, clock at " + clockRate + ", " + window + " ms window, ring of " + ring);
+		System.out.println(sync);
+	}
+
+	static AVSync run(int frames, int fps, int decodeMillis, double heavy, int showMillis, double clockRate,
+			long window, int ring, Random random) {
+		long[] nanos = {0};
+		long tick = Math.round(1000000 * clockRate);	//clock nanoseconds per simulated millisecond
+		AVSync sync = new AVSync(new SystemClock(() -> nanos[0]), window);
+		ArrayDeque<Long> queue = new ArrayDeque<Long>();	//timestamps of decoded frames
+		long period = 1000000L / fps;
+		int decoded = 0;
+		int presented = 0;
+		int busy = decodeTime(decodeMillis, heavy, random);
+		long wait = 0;				//clock microseconds the presenter is still waiting
+		int painting = 0;			//milliseconds until the frame on screen is painted
+		while(presented < frames) {
+			//Decoder: finishes a frame when its time is up and there is room in the ring.
+			if (busy > 0) {
+				busy--;
+			}
+			if (busy == 0 && decoded < frames && queue.size() < ring) {
+				queue.add(decoded * period);
+				decoded++;
+				busy = decodeTime(decodeMillis, heavy, random);
+			}
+
+			//Presenter: shows, drops or keeps waiting for the frame at the head of the ring.
+			wait -= tick / 1000;
+			if (painting > 0) {
+				painting--;
+			}
+			while(painting == 0 && wait <= 0 && !queue.isEmpty()) {
+				long timestamp = queue.peek();
+				wait = sync.decide(timestamp, queue.size() > 1);
+				if (wait == AVSync.DROP) {
+					queue.poll();
+					presented++;
+					wait = 0;
+				}
+				else if (wait == 0) {
+					sync.shown(timestamp);
+					queue.poll();
+					presented++;
+					painting = showMillis;
+					break;
+				}
+			}
+			nanos[0] += tick;
+		}
+		return sync;
+	}
+
+	private static int decodeTime(int decodeMillis, double heavy, Random random) {
+		int millis = 1 + random.nextInt(2 * decodeMillis);
+		return random.nextDouble() < heavy ? millis * 5 : millis;
+	}
+}
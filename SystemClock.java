@@ -0,0 +1,62 @@
+import java.util.function.LongSupplier;
+
+/*
+ * Stream time kept with System.nanoTime, for videos without sound. Time
+ * stands still while paused. The time source can be swapped for a simulated
+ * one (see SyncSimulation).
+ */
+public class SystemClock implements MediaClock {
+
+	private final LongSupplier nanos;
+	private long startTime = STOPPED;	//stream time at origin
+	private long origin;				//nanos at startTime, moved on by pauses
+	private long pausedAt = -1;			//nanos when paused, -1 while running
+
+	public SystemClock() {
+		this(System::nanoTime);
+	}
+
+	public SystemClock(LongSupplier nanos) {
+		this.nanos = nanos;
+	}
+
+	@Override
+	public synchronized long time() {
+		if (startTime == STOPPED)
+			return STOPPED;
+		long now = pausedAt >= 0 ? pausedAt : nanos.getAsLong();
+		return startTime + (now - origin) / 1000;
+	}
+
+	@Override
+	public synchronized void start(long streamTime) {
+		if (startTime != STOPPED)
+			return;
+		startTime = streamTime;
+		origin = nanos.getAsLong();
+		if (pausedAt >= 0) {
+			pausedAt = origin;
+		}
+	}
+
+	@Override
+	public void audioStarted(long streamTime) {
+	}
+
+	@Override
+	public synchronized void reset() {
+		startTime = STOPPED;
+	}
+
+	@Override
+	public synchronized void setPaused(boolean paused) {
+		long now = nanos.getAsLong();
+		if (paused && pausedAt < 0) {
+			pausedAt = now;
+		}
+		else if (!paused && pausedAt >= 0) {
+			origin += now - pausedAt;
+			pausedAt = -1;
+		}
+	}
+}
@@ -1,12 +1,14 @@
+import java.awt.image.BufferedImage;
 import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.TreeSet;
 import javax.sound.sampled.AudioFormat;
 import javax.sound.sampled.AudioSystem;
 import javax.sound.sampled.DataLine;
 import javax.sound.sampled.LineUnavailableException;
 import javax.sound.sampled.SourceDataLine;
 
-import com.xuggle.xuggler.Global;
 import com.xuggle.xuggler.IAudioSamples;
 import com.xuggle.xuggler.IContainer;
 import com.xuggle.xuggler.IPacket;
@@ -14,20 +16,15 @@ import com.xuggle.xuggler.IPixelFormat;
 import com.xuggle.xuggler.IStream;
 import com.xuggle.xuggler.IStreamCoder;
 import com.xuggle.xuggler.ICodec;
-import com.xuggle.xuggler.IVideoPicture;
 import com.xuggle.xuggler.IVideoResampler;
-import com.xuggle.xuggler.Utils;
-import com.xuggle.xuggler.video.ConverterFactory;
-import com.xuggle.xuggler.video.IConverter;
 
 /**
  * Takes a media container, finds the first video stream,
  * decodes that stream, and then plays the audio and video.
  *
- * This code does a VERY coarse job of matching time-stamps, and thus
- * the audio and video will float in and out of slight sync.  Getting
- * time-stamps syncing-up with audio is very system dependent and left
- * as an exercise for the reader.
+ * The video is timed against how far the sound line has actually played
+ * (see AVSync and AudioClock), or against System.nanoTime when there is no
+ * sound, and frames that fall too far behind are dropped.
  * 
  * @author aclarke
  * @author Jeremy Woods
@@ -47,20 +44,21 @@ public class VideoControl
 	 */
 	private static VideoImage mScreen = null;
 
-	private static long mSystemVideoClockStartTime;
-
-	private static long mFirstVideoTimestampInStream;
-
 	/*
 	 * Array List of VideoFrame class that will hold all of the information for
 	 * each frame that is the beginning or end of a shot.
 	 */
 	private static ArrayList<VideoFrame> firstFrames = new ArrayList<VideoFrame>();
 
+	//Last frame of the analysed range, where the last shot ends.
+	private static int lastFrame;
+
 	/*
-	 * Used for thread locking in order to pause and play video.
+	 * Decodes and plays the shots, and carries out what is picked in the window.
 	 */
-	private static Thread threadObject;
+	private static PlaybackEngine engine;
+	private static PlayerController controller;
+	private static PrerollCache preroll;		//opening frames of the shots around the one playing
 
 	/**
 	 * Takes a media container (file) as the first argument, opens it,
@@ -69,14 +67,10 @@ public class VideoControl
 	 *  
 	 * @param args Must contain one string which represents a filename
 	 */
-	@SuppressWarnings({ "deprecation", "static-access" })
+	@SuppressWarnings("deprecation")
 	public static void main(String[] args)
 	{
 
-		//Start our thread.
-		setThreadObject(new Thread());
-		getThreadObject().start();
-
 		//Has the ability to take file input as long as file is the full path.
 		//there is no error checking here.
 		File video;
@@ -89,10 +83,7 @@ public class VideoControl
 		    	filename = args[0];
 		    }
 
-		 //Custom class that uses the twins algorithm to find the cut frames.
-		ProcessFrames pf = new ProcessFrames(filename);
 
-		
 		/*Xuggler code*/
 		// Let's make sure that we can actually convert video pixel formats.
 		if (!IVideoResampler.isSupported(IVideoResampler.Feature.FEATURE_COLORSPACECONVERSION))
@@ -183,215 +174,57 @@ public class VideoControl
 		 * Now, we start walking through the container looking at each packet.
 		 */
 		IPacket packet = IPacket.make();
-		//Place frame 100 at the beginning of our frames so that we can have a
-		//start frame for it as well.
-		pf.getFirstFrames().add(0, 1000);
-		firstFrames = getFrameImage(pf.getFirstFrames(), container, packet, 
-				videoCoder, resampler, videoStreamId, filename);
-
-		//Set icons for the frames in our GUI.
-		mScreen.setFrameIcons(firstFrames);
+		firstFrames = loadShots(filename, container, packet, videoCoder, resampler, videoStreamId);
 
 		/*
-		 * This loop is here because it allows to use the application an unlimited amount of times
-		 * even though the video is read in frame by frame.
+		 * Decoding, showing the frames and playing the sound run on the engine's own
+		 * threads, and what is picked in the window goes to the controller's thread.
 		 */
-		while(true) {
-			//Set the count to the start of our current shot.
-			int count = mScreen.getStartFrame();
-			
-			//Xuggler uses this to slow down decoding of the video frames.
-			mFirstVideoTimestampInStream = Global.NO_PTS;
-			mSystemVideoClockStartTime = 0;
-			
-			//Use this method to seek to the specified starting frame.
-			container.seekKeyFrame(0, count - 1, count, count + 1, IContainer.SEEK_FLAG_ANY);
-
-			//We only want go from the beginning of the shot to the end of the shot.
-			while(count < mScreen.getEndFrame())
-			{
-				//Check if another picture was selected.
-				//If true, change the variable and break.
-				if(mScreen.isChanged()) {
-					mScreen.changed = false;
-					break;
-				}
-				
-				//Check if the video has been paused or not.
-				if(mScreen.isPaused()) {
-					synchronized(getThreadObject())
-					{
-						// Pause
-						try 
-						{
-							getThreadObject().wait();
-						} 
-						catch (InterruptedException e) 
-						{
-						}
+		FrameIndex index = FrameIndex.forVideo(filename);
+		MediaClock clock = mLine != null ? new AudioClock(mLine) : new SystemClock();
+		AVSync sync = new AVSync(clock, AVSync.windowFromProperties());
+		engine = new PlaybackEngine(container, videoCoder, resampler, videoStreamId,
+				audioCoder, audioStreamId, mLine, sync, index, filename, new PlaybackEngine.Display() {
+					@Override
+					public void show(BufferedImage image) {
+						mScreen.setImage(image);
+					}
+
+					@Override
+					public void ready(long generation) {
+						controller.rangeReady(generation);
 					}
-				}
-				
-				container.readNextPacket(packet);
-				/*
-				 * Now we have a packet, let's see if it belongs to our video stream
-				 */
-
-				if (packet.getStreamIndex() == videoStreamId)
-				{
-					/*
-					 * We allocate a new picture to get the data out of Xuggler
-					 */
-					IVideoPicture picture = IVideoPicture.make(videoCoder.getPixelType(),
-							videoCoder.getWidth(), videoCoder.getHeight());
-
-					/*
-					 * Now, we decode the video, checking for any errors.
-					 * 
-					 */
-					int bytesDecoded = videoCoder.decodeVideo(picture, packet, 0);
-					if (bytesDecoded < 0)
-						throw new RuntimeException("got error decoding audio in: " + filename);
-
-					/*
-					 * Some decoders will consume data in a packet, but will not be able to construct
-					 * a full video picture yet.  Therefore you should always check if you
-					 * got a complete picture from the decoder
-					 */
-					if (picture.isComplete())
-					{
-						IVideoPicture newPic = picture;
-						/*
-						 * If the resampler is not null, that means we didn't get the video in BGR24 format and
-						 * need to convert it into BGR24 format.
-						 */
-						if (resampler != null)
-						{
-							// we must resample
-							newPic = IVideoPicture.make(resampler.getOutputPixelFormat(), picture.getWidth(), picture.getHeight());
-							if (resampler.resample(newPic, picture) < 0)
-								throw new RuntimeException("could not resample video from: " + filename);
-						}
-						if (newPic.getPixelType() != IPixelFormat.Type.BGR24)
-							throw new RuntimeException("could not decode video as BGR 24 bit data in: " + filename);
-
-						long delay = millisecondsUntilTimeToDisplay(newPic);
-						// if there is no audio stream; go ahead and hold up the main thread.  We'll end
-						// up caching fewer video pictures in memory that way.
-						try
-						{
-							synchronized(getThreadObject()) {
-								if (delay > 0)
-									getThreadObject().sleep(delay);
-							}
-						}
-						catch (InterruptedException e)
-						{
-							return;
-						}
 
-						// And finally, convert the picture to an image and display it
-						count++;
-						
+					@Override
+					public void finished(long generation) {
 						//If we made it to the end of the shot, pause
-						if (count == mScreen.getEndFrame()) {
-							mScreen.setPaused();
-						}
-						
-						//If the shot selected shot is changed between the beginning
-						//and this point in the method check it again.
-						if(mScreen.isChanged()) {
-							mScreen.changed = false;
-							mScreen.setPaused();
-							break;
+						controller.rangeFinished(generation);
+						if (PlaybackEngine.STATS) {
+							System.out.println("Playback: " + sync);
+							System.out.println("Seeking: " + engine.getSeekStats());
+							if (preroll != null) {
+								System.out.println("Pre-roll: " + preroll);
+							}
 						}
-
-						mScreen.setImage(Utils.videoPictureToImage(newPic));
-
-					}
-				}
-				else if (packet.getStreamIndex() == audioStreamId)
-				{
-					/*
-					 * We allocate a set of samples with the same number of channels as the
-					 * coder tells us is in this buffer.
-					 * 
-					 * We also pass in a buffer size (1024 in our example), although Xuggler
-					 * will probably allocate more space than just the 1024 (it's not important why).
-					 */
-					IAudioSamples samples = IAudioSamples.make(1024, audioCoder.getChannels());
-
-					/*
-					 * A packet can actually contain multiple sets of samples (or frames of samples
-					 * in audio-decoding speak).  So, we may need to call decode audio multiple
-					 * times at different offsets in the packet's data.  We capture that here.
-					 */
-					int bytesDecoded = 144;
-					int offset = 0;
-
-					/*
-					 * Keep going until we've processed all data
-					 */
-					
-					//removed error checking because it allowed the code to avoid
-					//negative bytesDecoded and therefore the video continutes fine.
-					bytesDecoded = audioCoder.decodeAudio(samples, packet, offset);
-					offset += bytesDecoded;
-					/*
-					 * Some decoder will consume data in a packet, but will not be able to construct
-					 * a full set of samples yet.  Therefore you should always check if you
-					 * got a complete set of samples from the decoder
-					 */
-					if (samples.isComplete())
-					{
-						// note: this call will block if Java's sound buffers fill up, and we're
-						// okay with that.  That's why we have the video "sleeping" occur
-						// on another thread.
-											playJavaSound(samples);
 					}
-				}
-
+				});
+		if (index != null) {
+			int[] shotStarts = new int[firstFrames.size()];
+			for(int i = 0; i < shotStarts.length; i++) {
+				shotStarts[i] = firstFrames.get(i).getFrameNum();
 			}
-			
+			preroll = new PrerollCache(filename, index, shotStarts, lastFrame);
+			engine.setPreroll(preroll);
+			preroll.start();
 		}
-	}
-
-	private static long millisecondsUntilTimeToDisplay(IVideoPicture picture)
-	{
-		/**
-		 * We could just display the images as quickly as we decode them, but it turns
-		 * out we can decode a lot faster than you think.
-		 * 
-		 * So instead, the following code does a poor-man's version of trying to
-		 * match up the frame-rate requested for each IVideoPicture with the system
-		 * clock time on your computer.
-		 * 
-		 * Remember that all Xuggler IAudioSamples and IVideoPicture objects always
-		 * give timestamps in Microseconds, relative to the first decoded item.  If
-		 * instead you used the packet timestamps, they can be in different units depending
-		 * on your IContainer, and IStream and things can get hairy quickly.
-		 */
-		long millisecondsToSleep = 0;
-		if (mFirstVideoTimestampInStream == Global.NO_PTS)
-		{
-			// This is our first time through
-			mFirstVideoTimestampInStream = picture.getTimeStamp();
-			// get the starting clock time so we can hold up frames
-			// until the right time.
-			mSystemVideoClockStartTime = System.currentTimeMillis();
-			millisecondsToSleep = 0;
-		} else {
-			long systemClockCurrentTime = System.currentTimeMillis();
-			long millisecondsClockTimeSinceStartofVideo = systemClockCurrentTime - mSystemVideoClockStartTime;
-			// compute how long for this frame since the first frame in the stream.
-			// remember that IVideoPicture and IAudioSamples timestamps are always in MICROSECONDS,
-			// so we divide by 1000 to get milliseconds.
-			long millisecondsStreamTimeSinceStartOfVideo = (picture.getTimeStamp() - mFirstVideoTimestampInStream)/1000;
-			final long millisecondsTolerance = 50; // and we give ourselfs 50 ms of tolerance
-			millisecondsToSleep = (millisecondsStreamTimeSinceStartOfVideo -
-					(millisecondsClockTimeSinceStartofVideo+millisecondsTolerance));
-		}
-		return millisecondsToSleep;
+		controller = new PlayerController(engine, mScreen);
+		mScreen.setController(controller);
+		engine.start();
+		controller.start();
+
+		//Set icons for the frames in our GUI, and start at the first shot.
+		mScreen.setFrameIcons(firstFrames, lastFrame);
+		controller.selectShot(mScreen.getStartFrame(), mScreen.getEndFrame());
 	}
 
 	/**
@@ -423,97 +256,83 @@ public class VideoControl
 
 	}
 
-	private static void playJavaSound(IAudioSamples aSamples)
-	{
-		/**
-		 * We're just going to dump all the samples into the line.
-		 */
-		byte[] rawBytes = aSamples.getData().getByteArray(0, aSamples.getSize());
-		mLine.write(rawBytes, 0, aSamples.getSize());
-	}
-
-	//Process the frames to get the beginning and end of each shot.
-	private static ArrayList<VideoFrame> getFrameImage(ArrayList<Integer> frameNum, IContainer container, IPacket packet, 
-			IStreamCoder videoCoder, IVideoResampler resampler, int videoStreamId, String filename) {
-		ArrayList<VideoFrame> result = new ArrayList<VideoFrame>();
-		int count = 0;
-
-		container.seekKeyFrame(0, 999, 1000, 1001, IContainer.SEEK_FLAG_FRAME);
+	/*
+	 * Finds the shots of the video. A finished analysis is taken straight from
+	 * the AnalysisCache; otherwise the cut frames are found with ProcessFrames,
+	 * their images captured, and the result stored in the cache.
+	 */
+	private static ArrayList<VideoFrame> loadShots(String filename, IContainer container, IPacket packet,
+			IStreamCoder videoCoder, IVideoResampler resampler, int videoStreamId) {
+		AnalysisCache cache = AnalysisCache.getDefault();
+		String key = null;
+		try {
+			key = cache.key(new File(filename));
+			File entry = cache.lookup(key);
+			if (entry != null) {
+				FeatureFile features = FeatureFile.map(new File(entry, AnalysisCache.FEATURES));
+				lastFrame = features.startFrame + features.frameCount - 1;
+				return ShotStore.open(new File(entry, AnalysisCache.SHOTS)).frames();
+			}
+		}
+		catch (IOException e) {
+			System.out.println("Analysis cache unavailable: " + e.getMessage());
+		}
 
-		/*
-		 * Seek only the frames from 1000 to the next 4000 frames so 1000 - 5000.
-		 * This method does the same as playing it above except when we find a frame that 
-		 * matches one of the frameNumber we have determined to be a firstFrame, we add
-		 * the image, the frame num, and the timestamp to a VideoFrame arraylist.
-		 */
-		
-		while(count < 4000)
-		{
-			container.readNextPacket(packet);
-			if (packet.getStreamIndex() == videoStreamId)
-			{
-				/*
-				 * We allocate a new picture to get the data out of Xuggler
-				 */
-				IVideoPicture picture = IVideoPicture.make(videoCoder.getPixelType(),
-						videoCoder.getWidth(), videoCoder.getHeight());
-
-				/*
-				 * Now, we decode the video, checking for any errors.
-				 * 
-				 */
-				int bytesDecoded = videoCoder.decodeVideo(picture, packet, 0);
-				if (bytesDecoded < 0)
-					throw new RuntimeException("got error decoding video in: " + filename);
-
-				/*
-				 * Some decoders will consume data in a packet, but will not be able to construct
-				 * a full video picture yet.  Therefore you should always check if you
-				 * got a complete picture from the decoder
-				 */
-				if (picture.isComplete())
-				{
-					IVideoPicture newPic = picture;
-					/*
-					 * If the resampler is not null, that means we didn't get the video in BGR24 format and
-					 * need to convert it into BGR24 format.
-					 */
-					if (resampler != null)
-					{
-						// we must resample
-						newPic = IVideoPicture.make(resampler.getOutputPixelFormat(), picture.getWidth(), picture.getHeight());
-						if (resampler.resample(newPic, picture) < 0)
-							throw new RuntimeException("could not resample video from: " + filename);
-					}
-					if (newPic.getPixelType() != IPixelFormat.Type.BGR24)
-						throw new RuntimeException("could not decode video as BGR 24 bit data in: " + filename);
+		 //Custom class that uses the twins algorithm to find the cut frames.
+		ProcessFrames pf = new ProcessFrames(filename);
 
-					if(frameNum.contains(count + 1000)) {
-						IConverter converter = ConverterFactory.createConverter(ConverterFactory.XUGGLER_BGR_24, newPic);
-						result.add(new VideoFrame(converter.toImage(newPic), count + 1000, newPic.getFormattedTimeStamp()));	
-					}
+		//Place the first frame at the beginning of our frames so that we can have a
+		//start frame for it as well.
+		ArrayList<Integer> firstFrames = new ArrayList<Integer>();
+		firstFrames.add(pf.getStartFrame());
+		for(int frame: pf.getFirstFrames()) {
+			firstFrames.add(frame);
+		}
+		lastFrame = pf.getLastFrame();
+		ArrayList<VideoFrame> result = getFrameImage(firstFrames, container, packet, 
+				videoCoder, resampler, videoStreamId, filename);
 
-					count++;
-				}  
+		File features = new File(filename + FeatureFile.EXTENSION);
+		File shots = new File(filename + ShotStore.EXTENSION);
+		if (key != null && features.isFile() && shots.isFile()) {
+			try {
+				cache.store(key, features, shots);
+			}
+			catch (IOException e) {
+				System.out.println("Could not add " + filename + " to the analysis cache: " + e.getMessage());
 			}
 		}
-
 		return result;
 	}
 
-	public static Thread getThreadObject() {
-		return threadObject;
-	}
+	/*
+	 * Gets the image of the first frame of each shot. They are read back from the
+	 * _shots.bin file next to the video when it holds the same frames, otherwise
+	 * they are captured with targeted seeks and saved there for the next start.
+	 * Either way the images are read from that file again when needed.
+	 */
+	private static ArrayList<VideoFrame> getFrameImage(ArrayList<Integer> frameNum, IContainer container, IPacket packet, 
+			IStreamCoder videoCoder, IVideoResampler resampler, int videoStreamId, String filename) {
+		ArrayList<Integer> frames = new ArrayList<Integer>(new TreeSet<Integer>(frameNum));
+		File shots = new File(filename + ShotStore.EXTENSION);
 
-	public static void setThreadObject(Thread threadObject) {
-		VideoControl.threadObject = threadObject;
-	}
-	
-	public static void threadnoti() {
-		synchronized(getThreadObject())
-		{
-				getThreadObject().notify();
+		ShotStore store = ShotStore.openIfCurrent(shots, frames);
+		if (store != null)
+			return store.frames();
 
+		ArrayList<VideoFrame> result = ShotCapture.capture(frames, container, packet,
+				videoCoder, resampler, videoStreamId, filename);
+		try {
+			ShotStore.write(shots, result);
+			//The images can now be read back, so they do not have to stay in memory.
+			ShotStore written = ShotStore.open(shots);
+			for(int i = 0; i < result.size(); i++) {
+				result.get(i).setStore(written, i);
+			}
 		}
+		catch (IOException e) {
+			System.out.println("The file " + shots + " could not be written: " + e.getMessage());
+		}
+		return result;
 	}
 }
\ No newline at end of file
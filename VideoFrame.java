@@ -1,29 +1,102 @@
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.RenderingHints;
 import java.awt.image.BufferedImage;
+import java.io.IOException;
+
+import javax.swing.ImageIcon;
 
 /*
  * Custom class to place a frame's image, frameNum, and timestamp all together.
+ *
+ * A frame that can be read back from a ShotStore holds no image: it is read
+ * again each time it is asked for, and thumbnails are read straight at a
+ * reduced size (see ShotListModel).
  */
 public class VideoFrame {
 	BufferedImage image;
 	int frameNum;
 	String timestamp;
-	
+	private ShotStore store;		//where the image can be read back from, or null
+	private int shot;
+	private String caption;
+
 	//Takes a bufferedImage, frame, and timestamp.
 	VideoFrame(BufferedImage image, int frameNum, String timestamp) {
 		this.image = image;
 		this.frameNum = frameNum;
 		this.timestamp = timestamp;
 	}
-	
-	public BufferedImage getImage() {
-		return image;	
+
+	//A frame whose image is read from the given shot of the store when needed.
+	VideoFrame(ShotStore store, int shot) {
+		this(null, store.getFrameNum(shot), store.getTimestamp(shot));
+		setStore(store, shot);
+	}
+
+	//Tells the frame where its image can be read back from, so it can let go of it.
+	synchronized void setStore(ShotStore store, int shot) {
+		this.store = store;
+		this.shot = shot;
+		image = null;
+	}
+
+	//The full size image, read back from the store if it was let go.
+	public synchronized BufferedImage getImage() {
+		if (image == null && store != null) {
+			try {
+				return store.readImage(shot);
+			}
+			catch (IOException e) {
+				System.out.println("Could not read the image of frame " + frameNum + ": " + e.getMessage());
+			}
+		}
+		return image;
 	}
-	
+
+	/*
+	 * Scales the image to the given size, into an image suited to the screen
+	 * when a GraphicsConfiguration is given. Returns null if there is no image.
+	 */
+	public ImageIcon makeThumbnail(GraphicsConfiguration config, int width, int height) {
+		BufferedImage source = null;
+		synchronized(this) {
+			if (image == null && store != null) {
+				try {
+					source = store.readThumbnail(shot, width, height);
+				}
+				catch (IOException e) {
+					System.out.println("Could not read the image of frame " + frameNum + ": " + e.getMessage());
+				}
+			}
+			else {
+				source = image;
+			}
+		}
+		if (source == null)
+			return null;
+		BufferedImage thumbnail = config != null ? config.createCompatibleImage(width, height)
+				: new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		Graphics2D g = thumbnail.createGraphics();
+		g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+		g.drawImage(source, 0, 0, width, height, null);
+		g.dispose();
+		return new ImageIcon(thumbnail);
+	}
+
+	//Text shown under the thumbnail.
+	public String getCaption() {
+		if (caption == null) {
+			caption = "Frame " + frameNum + " at time " + timestamp;
+		}
+		return caption;
+	}
+
 	public int getFrameNum() {
 		return frameNum;
 	}
-	
+
 	public String getTimestamp() {
 		return timestamp;
 	}
-}
\ No newline at end of file
+}
@@ -3,16 +3,16 @@ import java.awt.Component;
 import java.awt.Dimension;
 import java.awt.Graphics;
 import java.awt.GridLayout;
-import java.awt.Image;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseListener;
 import java.awt.image.BufferedImage;
 import java.util.ArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import javax.swing.BorderFactory;
-import javax.swing.DefaultListModel;
 import javax.swing.ImageIcon;
 import javax.swing.JButton;
 import javax.swing.JFrame;
@@ -29,10 +29,10 @@ import javax.swing.event.ListSelectionListener;
 /*
  * This class holds the GUI for the application.
  * It is called by the video control class to display contents to the
- * user, and it sends notification to the main thread of the VideoControl object.
+ * user, and it sends play, pause and shot selections to the PlayerController.
  */
 @SuppressWarnings("serial")
-public class VideoImage extends JFrame {
+public class VideoImage extends JFrame implements PlayerController.Listener {
 	private JPanel top1;
 	private JList<VideoFrame> bottom1;		//Holder for all of our frames
 	private JLabel videoInfo;				//Will display info on the current shot
@@ -41,17 +41,24 @@ public class VideoImage extends JFrame {
 	private JScrollPane frameHolder;		//Added so make the selection frames scrollable
 	private int videoStartFrame;
 	private int videoEndFrame;
-	public boolean changed;
-	public boolean paused;
+	private PlayerController controller;
+	private ShotListModel shots;			//set once the shots are known
+	//Reads full size images off the event thread.
+	private final ExecutorService loader = Executors.newSingleThreadExecutor(runnable -> {
+		Thread thread = new Thread(runnable, "image loader");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	static final int THUMBNAIL_SIZE = 200;
 	
     private final ImagePane mOnscreenPicture;	//Where the video will be played.
+    private long played = 0;		//frames shown by playback, guarded by mOnscreenPicture
 
     public VideoImage() {
         super();
         mOnscreenPicture = new ImagePane();
         setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
-        paused = true;		//On starting pause the video
-        changed = false;
         
 		setTitle("Frame Decomposer");
 		
@@ -100,9 +107,17 @@ public class VideoImage extends JFrame {
 		setLocationRelativeTo(null);
     }
 
+    //Where play, pause and shot selections are sent.
+    public void setController(PlayerController controller) {
+    	this.controller = controller;
+    }
+
     //Used to change the image displayed in the GUI.
     public void setImage(final BufferedImage aImage) {
-        mOnscreenPicture.setImage(aImage);
+    	synchronized(mOnscreenPicture) {
+    		played++;
+    		mOnscreenPicture.setImage(aImage);
+    	}
     }
 
     
@@ -160,32 +175,70 @@ public class VideoImage extends JFrame {
      * and post it into the GUI.
      */
     public class FrameRenderer extends JLabel implements ListCellRenderer<VideoFrame> {
-    	 
-        @Override
-        public Component getListCellRendererComponent(JList<? extends VideoFrame> list, VideoFrame frame, int index,
-            boolean isSelected, boolean cellHasFocus) {
-            
-        	Image newimg = frame.image.getScaledInstance(200, 200,  java.awt.Image.SCALE_FAST);
-    		ImageIcon icon = new ImageIcon(newimg);
-        	this.setIcon(icon);
-        	this.setText("Frame " + frame.getFrameNum() + " at time " + frame.getTimestamp());
+
+    	//Shown until the thumbnail of a shot has been made.
+    	private final ImageIcon placeholder = new ImageIcon(
+    			new BufferedImage(THUMBNAIL_SIZE, THUMBNAIL_SIZE, BufferedImage.TYPE_INT_RGB));
+
+    	public FrameRenderer() {
         	this.setHorizontalTextPosition(CENTER);
         	this.setVerticalTextPosition(BOTTOM);
-        	
         	this.setLayout(new BorderLayout());
         	this.setBorder(BorderFactory.createEmptyBorder(5, 5, 5, 5));
-             
+    	}
+
+    	//Thumbnails come from the model and captions are made once per frame, so painting a cell makes nothing new.
+        @Override
+        public Component getListCellRendererComponent(JList<? extends VideoFrame> list, VideoFrame frame, int index,
+            boolean isSelected, boolean cellHasFocus) {
+        	ImageIcon icon = shots != null ? shots.getThumbnail(index) : null;
+        	this.setIcon(icon != null ? icon : placeholder);
+        	this.setText(frame.getCaption());
             return this;
         }
          
     }
+
+    /*
+     * Queues the thumbnails of a screen's worth of shots on either side of
+     * the visible ones, so they are there before they are scrolled to.
+     */
+    private void prefetchThumbnails() {
+    	int first = bottom1.getFirstVisibleIndex();
+    	int last = bottom1.getLastVisibleIndex();
+    	if (shots == null || first < 0)
+    		return;
+    	int visible = last - first + 1;
+    	shots.prefetch(last + 1, last + visible);
+    	shots.prefetch(first - visible, first - 1);
+    }
+
+    /*
+     * Shows the full size image of a frame, which may have to be read back
+     * from disk first. It is left out if playback has shown a frame in the
+     * meantime, so the picture does not jump back to the start of the shot.
+     */
+    private void showFrame(VideoFrame frame) {
+    	long since;
+    	synchronized(mOnscreenPicture) {
+    		since = played;
+    	}
+    	loader.execute(() -> {
+    		BufferedImage image = frame.getImage();
+    		synchronized(mOnscreenPicture) {
+    			if (played == since) {
+    				mOnscreenPicture.setImage(image);
+    			}
+    		}
+    	});
+    }
     
     /*
      * Places the given frames that have been placed into VideoFrame object into the
-     * GUI at the bottom.
+     * GUI at the bottom. The last shot runs up to lastFrame.
      */
-    public void setFrameIcons(ArrayList<VideoFrame> here) {
-    	DefaultListModel<VideoFrame> listModel = new DefaultListModel<VideoFrame>();
+    public void setFrameIcons(ArrayList<VideoFrame> here, int lastFrame) {
+    	shots = new ShotListModel(here, getGraphicsConfiguration(), THUMBNAIL_SIZE);
     	
     	//This is the listener for when new images are selected for their shots
     	//to be played.
@@ -195,12 +248,12 @@ public class VideoImage extends JFrame {
 				if (!arg0.getValueIsAdjusting()) {
 					@SuppressWarnings("unchecked")
 					JList<VideoFrame> source = (JList<VideoFrame>)arg0.getSource();
-					mOnscreenPicture.setImage(source.getSelectedValue().getImage());
+					showFrame(source.getSelectedValue());
 					videoStartFrame = source.getSelectedValue().getFrameNum();
 					//If its the last shot, set last frame manually, otherwise
 					//make it the next highest frame we have.
 					if(source.getSelectedIndex() + 1 == here.size()) {
-						videoEndFrame = 4999;
+						videoEndFrame = lastFrame;
 					}
 					else {
 						videoEndFrame = here.get(source.getSelectedIndex() + 1).getFrameNum();
@@ -209,21 +262,27 @@ public class VideoImage extends JFrame {
 					videoInfo.removeAll();
 					videoInfo.setText("<html>Start Frame is: " + videoStartFrame
 							+ "<br />Last Frame is: " + videoEndFrame + "<html>");
-					changed = true;
+					controller.selectShot(videoStartFrame, videoEndFrame);
 					
 					videoInfo.revalidate();  
 					videoInfo.repaint();
 	            }
 			}
         });
-    	bottom1.setCellRenderer(new FrameRenderer());
-    	for(VideoFrame frame: here) {
-    		listModel.addElement(frame);
-    	}
-    	bottom1.setModel(listModel);
+    	FrameRenderer renderer = new FrameRenderer();
+    	bottom1.setCellRenderer(renderer);
+    	//Every cell is as big as the one with the longest caption, so the list never has to measure them all.
+    	Dimension cell = renderer.getListCellRendererComponent(bottom1, here.get(here.size() - 1), -1, false, false)
+    			.getPreferredSize();
+    	bottom1.setFixedCellWidth(cell.width);
+    	bottom1.setFixedCellHeight(cell.height);
+    	bottom1.setModel(shots);
+    	frameHolder.getViewport().addChangeListener(e -> prefetchThumbnails());
     	videoStartFrame = here.get(0).getFrameNum();
-    	videoEndFrame = here.get(1).getFrameNum();
-    	mOnscreenPicture.setImage(here.get(0).getImage());
+    	videoEndFrame = here.size() > 1 ? here.get(1).getFrameNum() : lastFrame;
+    	videoInfo.setText("<html>Start Frame is: " + videoStartFrame
+    			+ "<br />Last Frame is: " + videoEndFrame + "<html>");
+    	showFrame(here.get(0));
     	VideoImage.this.invalidate();
         VideoImage.this.revalidate();
         repaint();
@@ -238,15 +297,7 @@ public class VideoImage extends JFrame {
     private class playButtonHandler implements ActionListener {
 
 		public void actionPerformed( ActionEvent e) {
-			if(paused) {
-				((JButton) e.getSource()).setText("Pause");
-				paused = false;
-				VideoControl.threadnoti();
-			}
-			else {
-				((JButton) e.getSource()).setText("Play");
-				paused = true;
-			}
+			controller.toggle();
 		}
 	}
     
@@ -256,15 +307,7 @@ public class VideoImage extends JFrame {
     private class playHandler implements MouseListener {
 		@Override
 		public void mouseClicked(MouseEvent arg0) {
-			if(paused) {
-				playButton.setText("Pause");
-				paused = false;
-				VideoControl.threadnoti();
-			}
-			else {
-				playButton.setText("Play");
-				paused = true;
-			}
+			controller.toggle();
 		}
 
 		@Override
@@ -289,16 +332,6 @@ public class VideoImage extends JFrame {
 		
 	}
     
-    //Changed getter
-    public boolean isChanged() {
-    	return changed;
-    }
-    
-    //Paused getter
-    public boolean isPaused() {
-    	return paused ;
-    }
-    
     //Find what the current end frame is.
     public int getEndFrame() {
     	return videoEndFrame;
@@ -309,10 +342,12 @@ public class VideoImage extends JFrame {
     	return videoStartFrame;
     }
     
-    //Sets paused to true, and sets play button to
-    //"Play" no matter what.
-    public void setPaused() {
-    	playButton.setText("Play");
-    	paused = true;
+    //The play button says what a click will do. It is left alone while seeking.
+    @Override
+    public void stateChanged(PlayerController.State state, int startFrame, int endFrame) {
+    	if (state == PlayerController.State.SEEKING)
+    		return;
+    	String text = state == PlayerController.State.PLAYING ? "Pause" : "Play";
+    	SwingUtilities.invokeLater(() -> playButton.setText(text));
     }
 }
\ No newline at end of file
@@ -0,0 +1,110 @@
+package bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+ * The twin-comparison steps of ProcessFrames on a synthetic feature matrix:
+ * the distances, the statistics behind tb and ts, and the two detectors, on
+ * their own and together in one scan or in parallel segments.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DetectionBenchmark {
+
+	private static final MethodHandle NEW_PROCESS_FRAMES = Project.constructor("ProcessFrames", String.class);
+	private static final MethodHandle FRAME_MATRIX = Project.field("ProcessFrames", "frameMatrix", false);
+	private static final MethodHandle FIND_DISTANCE = Project.method("ProcessFrames", "findDistance",
+			double[].class, "FeatureMatrix");
+	private static final MethodHandle FIND_CUTS = Project.method("ProcessFrames", "findCuts",
+			int[].class, double[].class, double[].class);
+	private static final MethodHandle FIND_TRANSITIONS = Project.method("ProcessFrames", "findTransitions",
+			int[].class, double[].class, double[].class, double[].class);
+	private static final MethodHandle DETECT = Project.method("ProcessFrames", "detect",
+			int[].class, double[].class, double[].class, double[].class, int.class);
+	private static final MethodHandle STATS = Project.method("DistanceEngine", "stats",
+			"DistanceEngine$Stats", double[].class, int.class, int.class);
+	private static final MethodHandle WRITE_FEATURES = Project.method("FeatureFile", "write",
+			void.class, File.class, int[][].class, int.class, int.class);
+
+	private static final int SEGMENT = 8192;
+
+	@Param({"4000", "90000"})
+	public int frames;
+
+	private File directory;
+	private Object processFrames;
+	private Object matrix;
+	private double[] distance;
+
+	@Setup
+	public void setup() throws Throwable {
+		directory = Files.createTempDirectory("detection").toFile();
+		String video = new File(directory, "video").getPath();
+		WRITE_FEATURES.invokeExact(new File(video + "_frames.bin"), Synthetic.featureRows(frames), frames, 0);
+		processFrames = (Object) NEW_PROCESS_FRAMES.invokeExact(video);
+		matrix = (Object) FRAME_MATRIX.invokeExact(processFrames);
+		distance = (double[]) FIND_DISTANCE.invokeExact(processFrames, matrix);
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		for(File file: directory.listFiles()) {
+			file.delete();
+		}
+		directory.delete();
+	}
+
+	@Benchmark
+	public double[] findDistance() throws Throwable {
+		return (double[]) FIND_DISTANCE.invokeExact(processFrames, matrix);
+	}
+
+	@Benchmark
+	public int[] findCuts() throws Throwable {
+		return (int[]) FIND_CUTS.invokeExact(processFrames, distance, (double[]) null);
+	}
+
+	@Benchmark
+	public int[] findTransitions() throws Throwable {
+		return (int[]) FIND_TRANSITIONS.invokeExact(processFrames, distance, (double[]) null, (double[]) null);
+	}
+
+	//Cuts and transitions merged, in one scan.
+	@Benchmark
+	public int[] detect() throws Throwable {
+		return (int[]) DETECT.invokeExact(processFrames, distance, (double[]) null, (double[]) null, 0);
+	}
+
+	//Same, SEGMENT distances at a time on the fork-join pool.
+	@Benchmark
+	public int[] detectSegmented() throws Throwable {
+		return (int[]) DETECT.invokeExact(processFrames, distance, (double[]) null, (double[]) null, SEGMENT);
+	}
+
+	//The mean and standard deviation in one pass, as findDistance does for descriptors that are not histograms.
+	@Benchmark
+	public Object stats() throws Throwable {
+		return (Object) STATS.invokeExact(distance, 1, distance.length - 1);
+	}
+}
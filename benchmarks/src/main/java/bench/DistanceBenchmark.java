@@ -0,0 +1,102 @@
+package bench;
+
+import java.io.File;
+import java.lang.invoke.MethodHandle;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+ * DistanceEngine over every consecutive pair of rows of a mapped feature
+ * file, with the mean and standard deviation in the same pass. The compared
+ * range is 25 columns wide for the intensity descriptor and 128 for grid; the
+ * grid rows are the synthetic intensity bins repeated to width.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+public class DistanceBenchmark {
+
+	private static final MethodHandle WRITE_FEATURES = Project.method("FeatureFile", "write",
+			void.class, File.class, int[][].class, int.class, int.class, "DescriptorSet");
+	private static final MethodHandle PARSE_DESCRIPTORS = Project.method("DescriptorSet", "parse",
+			"DescriptorSet", String.class);
+	private static final MethodHandle COLUMNS = Project.method("DescriptorSet", "columns", int.class);
+	private static final MethodHandle FIRST = Project.method("DescriptorSet", "get", "FrameDescriptor", int.class);
+	private static final MethodHandle SKIPPED = Project.method("FrameDescriptor", "skippedColumns", int.class);
+	private static final MethodHandle MAP = Project.method("FeatureFile", "map", "FeatureFile", File.class);
+	private static final MethodHandle MATRIX = Project.field("FeatureFile", "matrix", false);
+	private static final MethodHandle SCALAR = Project.method("DistanceEngine", "scalar", "DistanceEngine");
+	private static final MethodHandle VECTOR = Project.method("DistanceEngine", "vector", "DistanceEngine");
+	private static final MethodHandle PARSE_METRIC = Project.method("DistanceEngine$Metric", "parse",
+			"DistanceEngine$Metric", String.class);
+	private static final MethodHandle CONSECUTIVE = Project.method("DistanceEngine", "consecutive",
+			"DistanceEngine$Stats", "FeatureMatrix", int.class, int.class, "DistanceEngine$Metric", double[].class);
+
+	@Param({"100000"})
+	public int frames;
+
+	@Param({"intensity", "grid"})
+	public String descriptor;
+
+	@Param({"scalar", "vector"})
+	public String engine;
+
+	@Param({"l1", "l2", "chi-square", "intersection"})
+	public String metric;
+
+	private File file;
+	private Object distances;
+	private Object matrix;
+	private Object kind;
+	private double[] distance;
+	private int from;
+	private int to;
+
+	@Setup
+	public void setup() throws Throwable {
+		Object descriptors = (Object) PARSE_DESCRIPTORS.invokeExact(descriptor);
+		to = (int) COLUMNS.invokeExact(descriptors);
+		from = (int) SKIPPED.invokeExact((Object) FIRST.invokeExact(descriptors, 0));
+		int[][] intensity = Synthetic.featureRows(frames);
+		int[][] rows = new int[frames][to];
+		for(int i = 0; i < frames; i++) {
+			for(int j = 0; j < to; j++) {
+				rows[i][j] = intensity[i][j % 25 + 1];
+			}
+		}
+		file = Files.createTempFile("distance", ".bin").toFile();
+		WRITE_FEATURES.invokeExact(file, rows, frames, 0, descriptors);
+		matrix = (Object) MATRIX.invokeExact((Object) MAP.invokeExact(file));
+		distances = engine.equals("vector") ? (Object) VECTOR.invokeExact() : (Object) SCALAR.invokeExact();
+		if (distances == null)
+			throw new IllegalStateException("the vector engine is not available, add --add-modules jdk.incubator.vector");
+		kind = (Object) PARSE_METRIC.invokeExact(metric);
+		distance = new double[frames + 1];
+	}
+
+	@TearDown
+	public void tearDown() {
+		file.delete();
+	}
+
+	@Benchmark
+	public Object consecutive() throws Throwable {
+		return (Object) CONSECUTIVE.invokeExact(distances, matrix, from, to, kind, distance);
+	}
+}
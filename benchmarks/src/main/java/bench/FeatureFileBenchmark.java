@@ -0,0 +1,100 @@
+package bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+ * Writing and loading the feature matrix: the binary _frames.bin written by
+ * FeatureFile and mapped back, against the comma separated _frames.txt read
+ * by ProcessFrames.readFrameFile.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FeatureFileBenchmark {
+
+	private static final MethodHandle WRITE = Project.method("FeatureFile", "write",
+			void.class, File.class, int[][].class, int.class, int.class);
+	private static final MethodHandle MAP = Project.method("FeatureFile", "map", "FeatureFile", File.class);
+	private static final MethodHandle GET = Project.method("FeatureFile", "get", int.class, int.class, int.class);
+	private static final MethodHandle NEW_PROCESS_FRAMES = Project.constructor("ProcessFrames", String.class);
+	private static final MethodHandle NEW_MATRIX = Project.constructor("FeatureMatrix", int.class);
+	private static final MethodHandle SET_MATRIX = Project.field("ProcessFrames", "frameMatrix", true);
+	private static final MethodHandle READ_TEXT = Project.method("ProcessFrames", "readFrameFile",
+			void.class, String.class);
+
+	@Param({"4000", "90000"})
+	public int frames;
+
+	private File directory;
+	private int[][] rows;
+	private File binary;
+	private File text;
+	private File output;
+	private Object processFrames;
+
+	@Setup
+	public void setup() throws Throwable {
+		directory = Files.createTempDirectory("features").toFile();
+		rows = Synthetic.featureRows(frames);
+		binary = new File(directory, "video_frames.bin");
+		text = new File(directory, "video_frames.txt");
+		output = new File(directory, "output_frames.bin");
+		WRITE.invokeExact(binary, rows, frames, 0);
+		Synthetic.writeText(text, rows);
+		processFrames = (Object) NEW_PROCESS_FRAMES.invokeExact(new File(directory, "video").getPath());
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		for(File file: directory.listFiles()) {
+			file.delete();
+		}
+		directory.delete();
+	}
+
+	@Benchmark
+	public File writeBinary() throws Throwable {
+		WRITE.invokeExact(output, rows, frames, 0);
+		return output;
+	}
+
+	//Maps the file and touches every value.
+	@Benchmark
+	public long readBinary() throws Throwable {
+		Object features = (Object) MAP.invokeExact(binary);
+		long sum = 0;
+		for(int i = 0; i < frames; i++) {
+			for(int j = 0; j < 26; j++) {
+				sum += (int) GET.invokeExact(features, i, j);
+			}
+		}
+		return sum;
+	}
+
+	@Benchmark
+	public Object readText() throws Throwable {
+		SET_MATRIX.invokeExact(processFrames, (Object) NEW_MATRIX.invokeExact(26));
+		READ_TEXT.invokeExact(processFrames, text.getPath());
+		return processFrames;
+	}
+}
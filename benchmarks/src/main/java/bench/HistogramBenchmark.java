@@ -0,0 +1,97 @@
+package bench;
+
+import java.awt.image.BufferedImage;
+import java.lang.invoke.MethodHandle;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+ * The intensity histogram of one frame. ProcessVideo.getIntensity is a thin
+ * wrapper that picks one of these paths and copies the bins into its row;
+ * luma is the path for YUV frames, which skips the BGR24 conversion.
+ * descriptors fills the intensity, hsv, grid and ecr descriptors in the one
+ * pass DescriptorSet makes over the pixels.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HistogramBenchmark {
+
+	private static final MethodHandle FAST = Project.method("IntensityHistogram", "histogram",
+			void.class, BufferedImage.class, int.class, int.class, int[].class);
+	private static final MethodHandle LEGACY = Project.method("IntensityHistogram", "legacyHistogram",
+			void.class, BufferedImage.class, int.class, int.class, int[].class);
+	private static final MethodHandle LUMA = Project.method("IntensityHistogram", "histogramLuma",
+			void.class, ByteBuffer.class, int.class, int.class, int.class, int.class, int.class, boolean.class, int[].class);
+	private static final MethodHandle PARSE_DESCRIPTORS = Project.method("DescriptorSet", "parse",
+			"DescriptorSet", String.class);
+	private static final MethodHandle COLUMNS = Project.method("DescriptorSet", "columns", int.class);
+	private static final MethodHandle COMPUTE = Project.method("DescriptorSet", "compute",
+			void.class, BufferedImage.class, int.class, int[].class);
+
+	@Param({"320x240", "1280x720", "1920x1080"})
+	public String resolution;
+
+	private BufferedImage image;
+	private ByteBuffer plane;
+	private int height;
+	private int width;
+	private final int[] bins = new int[26];
+	private Object descriptors;
+	private int[] row;
+
+	@Setup
+	public void setup() {
+		String[] size = resolution.split("x");
+		width = Integer.parseInt(size[0]);
+		height = Integer.parseInt(size[1]);
+		image = Synthetic.bgrImage(width, height);
+		plane = Synthetic.lumaPlane(image);
+		try {
+			descriptors = (Object) PARSE_DESCRIPTORS.invokeExact("intensity,hsv,grid,ecr");
+			row = new int[(int) COLUMNS.invokeExact(descriptors)];
+		}
+		catch (Throwable e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	@Benchmark
+	public int[] fast() throws Throwable {
+		FAST.invokeExact(image, height, width, bins);
+		return bins;
+	}
+
+	@Benchmark
+	public int[] luma() throws Throwable {
+		LUMA.invokeExact(plane, 0, width, height, width, 1, false, bins);
+		return bins;
+	}
+
+	@Benchmark
+	public int[] descriptors() throws Throwable {
+		COMPUTE.invokeExact(descriptors, image, 1, row);
+		return row;
+	}
+
+	@Benchmark
+	public int[] legacy() throws Throwable {
+		LEGACY.invokeExact(image, height, width, bins);
+		return bins;
+	}
+}
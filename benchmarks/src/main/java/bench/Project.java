@@ -0,0 +1,102 @@
+package bench;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+
+/*
+ * The project classes live in the default package, which cannot be imported
+ * from here, so the benchmarks reach them through method handles. Handles
+ * kept in static final fields are constants to the JIT, so calling them costs
+ * the same as a direct call. Private methods are reachable too.
+ */
+final class Project {
+
+	private Project() {
+	}
+
+	static Class<?> type(String name) {
+		try {
+			return Class.forName(name);
+		}
+		catch (ClassNotFoundException e) {
+			throw new IllegalStateException("project class " + name + " is not on the class path", e);
+		}
+	}
+
+	private static MethodHandles.Lookup lookup(Class<?> owner) throws IllegalAccessException {
+		return MethodHandles.privateLookupIn(owner, MethodHandles.lookup());
+	}
+
+	/*
+	 * Handle to a method of a project class. Project types in the signature
+	 * are given by name and show up as Object in the returned handle, with the
+	 * receiver first for instance methods.
+	 */
+	static MethodHandle method(String owner, String name, Object returnType, Object... parameterTypes) {
+		try {
+			Class<?> type = type(owner);
+			Class<?>[] parameters = new Class<?>[parameterTypes.length];
+			for(int i = 0; i < parameters.length; i++) {
+				parameters[i] = resolve(parameterTypes[i]);
+			}
+			java.lang.reflect.Method method = type.getDeclaredMethod(name, parameters);
+			MethodHandle handle = lookup(type).unreflect(method);
+			return handle.asType(erase(handle.type()));
+		}
+		catch (ReflectiveOperationException e) {
+			throw new IllegalStateException("cannot reach " + owner + "." + name, e);
+		}
+	}
+
+	//Handle to a constructor of a project class, returning Object.
+	static MethodHandle constructor(String owner, Object... parameterTypes) {
+		try {
+			Class<?> type = type(owner);
+			Class<?>[] parameters = new Class<?>[parameterTypes.length];
+			for(int i = 0; i < parameters.length; i++) {
+				parameters[i] = resolve(parameterTypes[i]);
+			}
+			MethodHandle handle = lookup(type).unreflectConstructor(type.getDeclaredConstructor(parameters));
+			return handle.asType(erase(handle.type()));
+		}
+		catch (ReflectiveOperationException e) {
+			throw new IllegalStateException("cannot reach " + owner + " constructor", e);
+		}
+	}
+
+	//Getter or setter handle for a field of a project class.
+	static MethodHandle field(String owner, String name, boolean setter) {
+		try {
+			Class<?> type = type(owner);
+			java.lang.reflect.Field field = type.getDeclaredField(name);
+			MethodHandles.Lookup lookup = lookup(type);
+			MethodHandle handle = setter ? lookup.unreflectSetter(field) : lookup.unreflectGetter(field);
+			return handle.asType(erase(handle.type()));
+		}
+		catch (ReflectiveOperationException e) {
+			throw new IllegalStateException("cannot reach " + owner + "." + name, e);
+		}
+	}
+
+	private static Class<?> resolve(Object type) {
+		return type instanceof String ? type((String) type) : (Class<?>) type;
+	}
+
+	//Replaces the default package types in a method type with Object.
+	private static MethodType erase(MethodType type) {
+		for(int i = 0; i < type.parameterCount(); i++) {
+			if (isProjectType(type.parameterType(i))) {
+				type = type.changeParameterType(i, Object.class);
+			}
+		}
+		if (isProjectType(type.returnType())) {
+			type = type.changeReturnType(Object.class);
+		}
+		return type;
+	}
+
+	private static boolean isProjectType(Class<?> type) {
+		return !type.isPrimitive() && !type.isArray() && type.getPackageName().isEmpty();
+	}
+}
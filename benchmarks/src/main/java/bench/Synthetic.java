@@ -0,0 +1,112 @@
+package bench;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+/*
+ * Fixed-seed inputs for the benchmarks, so every run measures the same work.
+ */
+final class Synthetic {
+
+	static final long SEED = 42;
+
+	private Synthetic() {
+	}
+
+	//A BGR image of smooth gradients with noise, like a decoded frame.
+	static BufferedImage bgrImage(int width, int height) {
+		BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_3BYTE_BGR);
+		byte[] data = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+		Random random = new Random(SEED);
+		int p = 0;
+		for(int y = 0; y < height; y++) {
+			for(int x = 0; x < width; x++) {
+				data[p++] = (byte) (x * 255 / width + random.nextInt(16));
+				data[p++] = (byte) (y * 255 / height + random.nextInt(16));
+				data[p++] = (byte) ((x + y) * 127 / (width + height) + random.nextInt(64));
+			}
+		}
+		return image;
+	}
+
+	//The limited range Y plane a decoder would make for the image, in native memory.
+	static ByteBuffer lumaPlane(BufferedImage image) {
+		int width = image.getWidth();
+		int height = image.getHeight();
+		byte[] data = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+		ByteBuffer plane = ByteBuffer.allocateDirect(width * height);
+		for(int i = 0, p = 0; i < width * height; i++, p += 3) {
+			double luma = .299*(data[p + 2] & 0xff) + .587*(data[p + 1] & 0xff) + .114*(data[p] & 0xff);
+			plane.put(i, (byte) Math.round(16 + luma * 219 / 255));
+		}
+		return plane;
+	}
+
+	/*
+	 * Rows of a 26 column intensity matrix for a 320x240 video: shots of a few
+	 * seconds joined mostly by cuts and sometimes by 20 frame dissolves, with
+	 * noise on every frame.
+	 */
+	static int[][] featureRows(int frames) {
+		Random random = new Random(SEED);
+		int[][] rows = new int[frames][26];
+		double[] shot = shotHistogram(random);
+		double[] next = null;
+		int length = 0;
+		int step = 0;
+		for(int i = 0; i < frames; i++) {
+			if (next == null && random.nextInt(90) == 0) {
+				next = shotHistogram(random);
+				length = random.nextInt(4) == 0 ? 20 : 1;
+				step = 0;
+			}
+			double mix = 0;
+			if (next != null) {
+				step++;
+				mix = step / (double) length;
+				if (step >= length) {
+					shot = next;
+					next = null;
+				}
+			}
+			rows[i][0] = 320 * 240;
+			for(int j = 1; j < 26; j++) {
+				double value = next == null ? shot[j] : shot[j] * (1 - mix) + next[j] * mix;
+				rows[i][j] = (int) Math.max(0, Math.round(value + random.nextGaussian() * 40));
+			}
+		}
+		return rows;
+	}
+
+	private static double[] shotHistogram(Random random) {
+		double[] bins = new double[26];
+		double total = 0;
+		for(int j = 1; j < 26; j++) {
+			bins[j] = random.nextDouble() * random.nextDouble();
+			total += bins[j];
+		}
+		for(int j = 1; j < 26; j++) {
+			bins[j] = bins[j] / total * 320 * 240;
+		}
+		return bins;
+	}
+
+	//Writes rows in the comma separated _frames.txt layout.
+	static void writeText(File file, int[][] rows) throws IOException {
+		try (BufferedWriter writer = new BufferedWriter(new FileWriter(file))) {
+			String comma = "";
+			for(int[] row: rows) {
+				for(int value: row) {
+					writer.write(comma + value);
+					comma = ",";
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,122 @@
+package bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+ * The twin-comparison with global thresholds (window 0) against local ones
+ * from a window of distances around each frame, once over distances already
+ * worked out and once streaming the rows through StreamingShotDetector.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ThresholdBenchmark {
+
+	private static final MethodHandle NEW_PROCESS_FRAMES = Project.constructor("ProcessFrames", String.class);
+	private static final MethodHandle FRAME_MATRIX = Project.field("ProcessFrames", "frameMatrix", false);
+	private static final MethodHandle PARAMETERS = Project.field("ProcessFrames", "parameters", false);
+	private static final MethodHandle FIND_DISTANCE = Project.method("ProcessFrames", "findDistance",
+			double[].class, "FeatureMatrix");
+	private static final MethodHandle FIND_CUTS = Project.method("ProcessFrames", "findCuts",
+			int[].class, double[].class, double[].class);
+	private static final MethodHandle FIND_TRANSITIONS = Project.method("ProcessFrames", "findTransitions",
+			int[].class, double[].class, double[].class, double[].class);
+	private static final MethodHandle NEW_THRESHOLDS = Project.constructor("AdaptiveThresholds",
+			double[].class, int.class, "AnalysisSession$Parameters", double.class, double.class);
+	private static final MethodHandle TB = Project.field("AdaptiveThresholds", "tb", false);
+	private static final MethodHandle TS = Project.field("AdaptiveThresholds", "ts", false);
+	private static final MethodHandle NEW_DETECTOR = Project.constructor("StreamingShotDetector",
+			int.class, "StreamingShotDetector$Listener");
+	private static final MethodHandle SET_WINDOW = Project.method("StreamingShotDetector", "setWindow",
+			void.class, int.class);
+	private static final MethodHandle ADD_ROW = Project.method("StreamingShotDetector", "addRow",
+			void.class, int[].class);
+	private static final MethodHandle WRITE_FEATURES = Project.method("FeatureFile", "write",
+			void.class, File.class, int[][].class, int.class, int.class);
+
+	@Param({"90000"})
+	public int frames;
+
+	@Param({"0", "250", "1500"})
+	public int window;
+
+	private File directory;
+	private Object processFrames;
+	private Object parameters;
+	private double[] distance;
+	private int[][] rows;
+	private Object listener;
+	private int boundaries;
+
+	@Setup
+	public void setup() throws Throwable {
+		directory = Files.createTempDirectory("threshold").toFile();
+		String video = new File(directory, "video").getPath();
+		rows = Synthetic.featureRows(frames);
+		WRITE_FEATURES.invokeExact(new File(video + "_frames.bin"), rows, frames, 0);
+		processFrames = (Object) NEW_PROCESS_FRAMES.invokeExact(video);
+		parameters = (Object) PARAMETERS.invokeExact(processFrames);
+		Object matrix = (Object) FRAME_MATRIX.invokeExact(processFrames);
+		distance = (double[]) FIND_DISTANCE.invokeExact(processFrames, matrix);
+		Class<?> type = Project.type("StreamingShotDetector$Listener");
+		listener = Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type }, (proxy, method, args) -> {
+			boundaries++;
+			return null;
+		});
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		for(File file: directory.listFiles()) {
+			file.delete();
+		}
+		directory.delete();
+	}
+
+	//Cuts and transitions from the distances, with the thresholds worked out first when local.
+	@Benchmark
+	public int detect() throws Throwable {
+		double[] tb = null;
+		double[] ts = null;
+		if (window > 0) {
+			Object local = (Object) NEW_THRESHOLDS.invokeExact(distance, window, parameters, 0.0, 0.0);
+			tb = (double[]) TB.invokeExact(local);
+			ts = (double[]) TS.invokeExact(local);
+		}
+		int[] cuts = (int[]) FIND_CUTS.invokeExact(processFrames, distance, tb);
+		int[] transitions = (int[]) FIND_TRANSITIONS.invokeExact(processFrames, distance, tb, ts);
+		return cuts.length + transitions.length;
+	}
+
+	@Benchmark
+	public int stream() throws Throwable {
+		boundaries = 0;
+		Object detector = (Object) NEW_DETECTOR.invokeExact(0, listener);
+		SET_WINDOW.invokeExact(detector, window);
+		for(int[] row: rows) {
+			ADD_ROW.invokeExact(detector, row);
+		}
+		return boundaries;
+	}
+}
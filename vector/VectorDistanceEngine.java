@@ -0,0 +1,109 @@
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+/*
+ * DistanceEngine kernels on the JDK Vector API, the widest vectors the CPU
+ * has. L1 and intersection add up in int lanes; L2 and chi-square widen the
+ * ints to doubles, so they load half as many ints at a time. Columns past the
+ * last full vector are done one at a time.
+ *
+ * Needs --add-modules jdk.incubator.vector to compile and run, so it is kept
+ * out of the main sources and compiled on its own, against them:
+ *
+ *   javac -cp classes --add-modules jdk.incubator.vector -d classes vector/VectorDistanceEngine.java
+ *   java --add-modules jdk.incubator.vector -cp classes:... VideoControl
+ *
+ * Only made through DistanceEngine.vector, which falls back to the scalar
+ * kernel when the class was not compiled or the module is missing.
+ */
+final class VectorDistanceEngine extends DistanceEngine {
+
+	private static final VectorSpecies<Integer> INTS = IntVector.SPECIES_PREFERRED;
+	private static final VectorSpecies<Double> DOUBLES = DoubleVector.SPECIES_PREFERRED;
+	//Ints that widen into one vector of doubles.
+	private static final VectorSpecies<Integer> HALF_INTS = VectorSpecies.of(int.class,
+			VectorShape.forBitSize(DOUBLES.vectorBitSize() / 2));
+
+	@Override
+	double distance(int[] a, int[] b, int from, int to, Metric metric) {
+		switch(metric) {
+		case L1:
+			return l1(a, b, from, to);
+		case L2:
+			return Math.sqrt(squares(a, b, from, to, false));
+		case CHI_SQUARE:
+			return squares(a, b, from, to, true);
+		default:
+			return intersection(a, b, from, to);
+		}
+	}
+
+	private static double l1(int[] a, int[] b, int from, int to) {
+		IntVector sum = IntVector.zero(INTS);
+		int j = from;
+		for(int bound = from + INTS.loopBound(to - from); j < bound; j += INTS.length()) {
+			IntVector va = IntVector.fromArray(INTS, a, j);
+			IntVector vb = IntVector.fromArray(INTS, b, j);
+			sum = sum.add(va.sub(vb).abs());
+		}
+		long total = sum.reduceLanes(VectorOperators.ADD);
+		for(; j < to; j++) {
+			total += Math.abs(a[j] - b[j]);
+		}
+		return total;
+	}
+
+	//Sum of (a - b)^2, divided by a + b for chi-square.
+	private static double squares(int[] a, int[] b, int from, int to, boolean chiSquare) {
+		DoubleVector sum = DoubleVector.zero(DOUBLES);
+		int j = from;
+		for(int bound = from + HALF_INTS.loopBound(to - from); j < bound; j += HALF_INTS.length()) {
+			IntVector va = IntVector.fromArray(HALF_INTS, a, j);
+			IntVector vb = IntVector.fromArray(HALF_INTS, b, j);
+			DoubleVector d = (DoubleVector) va.sub(vb).convertShape(VectorOperators.I2D, DOUBLES, 0);
+			DoubleVector term = d.mul(d);
+			if (chiSquare) {
+				DoubleVector total = (DoubleVector) va.add(vb).convertShape(VectorOperators.I2D, DOUBLES, 0);
+				term = term.div(total.max(1));
+			}
+			sum = sum.add(term);
+		}
+		double total = sum.reduceLanes(VectorOperators.ADD);
+		for(; j < to; j++) {
+			double d = a[j] - b[j];
+			total += chiSquare ? d * d / Math.max(1, a[j] + b[j]) : d * d;
+		}
+		return total;
+	}
+
+	private static double intersection(int[] a, int[] b, int from, int to) {
+		IntVector sumA = IntVector.zero(INTS);
+		IntVector sumB = IntVector.zero(INTS);
+		IntVector common = IntVector.zero(INTS);
+		int j = from;
+		for(int bound = from + INTS.loopBound(to - from); j < bound; j += INTS.length()) {
+			IntVector va = IntVector.fromArray(INTS, a, j);
+			IntVector vb = IntVector.fromArray(INTS, b, j);
+			sumA = sumA.add(va);
+			sumB = sumB.add(vb);
+			common = common.add(va.min(vb));
+		}
+		long totalA = sumA.reduceLanes(VectorOperators.ADD);
+		long totalB = sumB.reduceLanes(VectorOperators.ADD);
+		long totalCommon = common.reduceLanes(VectorOperators.ADD);
+		for(; j < to; j++) {
+			totalA += a[j];
+			totalB += b[j];
+			totalCommon += Math.min(a[j], b[j]);
+		}
+		return Math.max(totalA, totalB) - totalCommon;
+	}
+
+	@Override
+	public String toString() {
+		return "vector (" + INTS.length() + " ints)";
+	}
+}